@@ -0,0 +1,241 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import grails.util.GrailsUtil
+
+import java.nio.file.Files
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Times the launcher's startup hot paths (war extraction, directory deletion and
+ * argument parsing) against synthetic wars, and optionally the time from launching
+ * standalone jars to their first 200 response.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+
+includeTargets << grailsScript('_GrailsCompile')
+
+target(benchmarkStandalone: 'Benchmark the standalone launcher startup paths') {
+	depends compile
+
+	try {
+		int warmup = (argsMap.warmup ?: 2) as int
+		int iterations = (argsMap.iterations ?: 5) as int
+		List<Integer> threadCounts = (argsMap.threads ?: '1,4').toString().split(',')*.trim()*.toInteger()
+
+		File workDir = new File(grailsSettings.projectTargetDir, 'standalone-benchmark-' + System.currentTimeMillis()).absoluteFile
+		workDir.mkdirs()
+
+		def launcherClass = new GroovyClassLoader(classLoader).parseClass('''
+			class BenchmarkLauncher extends grails.plugin.standalone.AbstractLauncher {
+				BenchmarkLauncher(String[] args) { super(args) }
+				protected void start(File exploded) {}
+			}''')
+		def newLauncher = { List<String> args -> launcherClass.newInstance([args as String[]] as Object[]) }
+
+		println "Warm-up iterations: $warmup, measured iterations: $iterations"
+		println String.format('%-28s %-8s %10s %10s %10s %12s', 'benchmark', 'war', 'mean ms', 'min ms', 'max ms', 'MB/s')
+
+		for (Map profile in benchmarkWarProfiles) {
+			File war = createSyntheticWar(new File(workDir, profile.name + '.war'), profile)
+			long bytes = profile.entries * profile.entrySize
+
+			def extractTo = { -> new File(workDir, 'extract-' + System.nanoTime()) }
+
+			def launcher = newLauncher([])
+			reportBenchmark 'extractWar (copy + explode)', profile.name, bytes, warmup, iterations, { extractTo() }, { File dir ->
+				launcher.extractWar(new FileInputStream(war), new File(dir, 'embedded.war'))
+			}, { File dir -> launcher.deleteDir dir }
+
+			for (int threads in threadCounts) {
+				def parallelLauncher = newLauncher(['extractThreads=' + threads])
+				reportBenchmark "explode, $threads thread(s)", profile.name, bytes, warmup, iterations, {
+					File dir = extractTo()
+					dir.mkdirs()
+					File copy = new File(dir, 'embedded.war')
+					Files.copy war.toPath(), copy.toPath()
+					copy
+				}, { File copy -> parallelLauncher.explode copy }, { File copy -> launcher.deleteDir copy.parentFile }
+			}
+
+			reportBenchmark 'explode from stream', profile.name, bytes, warmup, iterations, { extractTo() }, { File dir ->
+				launcher.explode(new BufferedInputStream(new FileInputStream(war)), dir)
+			}, { File dir -> launcher.deleteDir dir }
+
+			reportBenchmark 'deleteDir', profile.name, bytes, warmup, iterations, {
+				File dir = extractTo()
+				launcher.explode(new FileInputStream(war), dir)
+				dir
+			}, { File dir -> launcher.deleteDir dir }, { File dir -> launcher.deleteDir dir }
+		}
+
+		String[] args = ['context=app', 'port=8080', 'httpsPort=8443', 'maxThreads=200', 'enableCompression=true',
+		                 'compressableMimeTypes=text/html,text/css', 'extractThreads=4', 'sessionTimeout=30']
+		def parser = newLauncher([])
+		int parses = 100000
+		reportBenchmark "argsToMap x $parses", '-', 0, warmup, iterations, { null }, {
+			for (int i = 0; i < parses; i++) {
+				parser.argsToMap args
+			}
+		}, { }
+
+		if (argsMap.jar) {
+			for (String path in argsMap.jar.toString().split(',')) {
+				benchmarkTimeToFirstResponse new File(path.trim()).absoluteFile, workDir, iterations
+			}
+		}
+		else {
+			println 'Specify --jar=<jar>[,<jar>] to also measure the time to the first 200 response of standalone jars'
+		}
+
+		if (!argsMap.keep) {
+			workDir.deleteDir()
+		}
+	}
+	catch (e) {
+		throw GrailsUtil.deepSanitize(e)
+	}
+}
+
+/**
+ * The synthetic wars: many small compressible files (e.g. GSPs and static resources)
+ * and a few large incompressible ones (e.g. jars in WEB-INF/lib).
+ */
+benchmarkWarProfiles = [
+	[name: 'small', entries: 500, entrySize: 2048, compressible: true],
+	[name: 'many', entries: 20000, entrySize: 1024, compressible: true],
+	[name: 'large', entries: 60, entrySize: 2 * 1024 * 1024, compressible: false]
+]
+
+createSyntheticWar = { File war, Map profile ->
+	Random random = new Random(42)
+	byte[] text = ('<div class="row">${item.name}</div>\n' * (profile.entrySize / 32 + 1)).getBytes('UTF-8')
+	war.withOutputStream { OutputStream out ->
+		ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out))
+		for (int i = 0; i < profile.entries; i++) {
+			byte[] bytes = new byte[profile.entrySize]
+			if (profile.compressible) {
+				System.arraycopy text, 0, bytes, 0, bytes.length
+			}
+			else {
+				random.nextBytes bytes
+			}
+
+			String name = profile.compressible ? "views/dir${i % 50}/page${i}.gsp" : "WEB-INF/lib/lib${i}.jar"
+			ZipEntry entry = new ZipEntry(name)
+			if (!profile.compressible) {
+				// jars are already compressed, so war tools usually store them
+				CRC32 crc = new CRC32()
+				crc.update bytes
+				entry.method = ZipEntry.STORED
+				entry.size = bytes.length
+				entry.crc = crc.value
+			}
+			zip.putNextEntry entry
+			zip.write bytes
+			zip.closeEntry()
+		}
+		zip.finish()
+		zip.flush()
+	}
+	war
+}
+
+/**
+ * Runs the benchmark warmup + iterations times, timing only the benchmark closure;
+ * setup creates its input and cleanup runs after each run, both untimed.
+ */
+reportBenchmark = { String name, String warName, long bytes, int warmup, int iterations,
+                    Closure setup, Closure benchmark, Closure cleanup ->
+	List<Long> timings = []
+	for (int i = 0; i < warmup + iterations; i++) {
+		def input = setup()
+		long start = System.nanoTime()
+		benchmark input
+		long nanos = System.nanoTime() - start
+		cleanup input
+		if (i >= warmup) {
+			timings << nanos
+		}
+	}
+
+	double mean = timings.sum() / timings.size() / 1e6
+	String rate = bytes ? String.format('%.1f', bytes / (1024.0 * 1024.0) / (mean / 1000)) : '-'
+	println String.format('%-28s %-8s %10.1f %10.1f %10.1f %12s', name, warName, mean,
+			timings.min() / 1e6, timings.max() / 1e6, rate)
+}
+
+/**
+ * Starts the jar repeatedly with a fresh work dir, polling until the first 200
+ * response, then kills it.
+ */
+benchmarkTimeToFirstResponse = { File jar, File workDir, int iterations ->
+	if (!jar.file) {
+		event 'StatusError', ["Jar $jar.path not found"]
+		return
+	}
+
+	int port = (argsMap.port ?: 18080) as int
+	String path = argsMap.url ?: '/'
+	List<String> launchArgs = argsMap.launchArgs ? argsMap.launchArgs.toString().split(' ') as List : []
+	String java = new File(System.getProperty('java.home'), 'bin/java').path
+
+	List<Long> timings = []
+	for (int i = 0; i < iterations; i++) {
+		File runDir = new File(workDir, 'run-' + System.nanoTime())
+		runDir.mkdirs()
+		List<String> command = [java, '-jar', jar.path, 'port=' + port, 'workDir=' + runDir.path] + launchArgs
+		long start = System.nanoTime()
+		Process process = new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(new File(runDir, 'server.log')).start()
+		try {
+			URL url = new URL("http://localhost:$port$path")
+			long deadline = System.currentTimeMillis() + 300000
+			boolean ok = false
+			while (!ok && System.currentTimeMillis() < deadline && process.alive) {
+				try {
+					HttpURLConnection connection = (HttpURLConnection) url.openConnection()
+					connection.connectTimeout = 1000
+					ok = connection.responseCode == 200
+					connection.disconnect()
+				}
+				catch (IOException ignored) {
+					// not listening yet
+				}
+				if (!ok) {
+					Thread.sleep 10
+				}
+			}
+
+			if (!ok) {
+				event 'StatusError', ["No 200 response from $url; see ${new File(runDir, 'server.log')}"]
+				return
+			}
+			timings << System.nanoTime() - start
+		}
+		finally {
+			process.destroy()
+			process.waitFor()
+		}
+	}
+
+	println String.format('%-28s %-8s %10.1f %10.1f %10.1f %12s', 'time to first 200', jar.name,
+			timings.sum() / timings.size() / 1e6, timings.min() / 1e6, timings.max() / 1e6, '-')
+}
+
+setDefaultTarget benchmarkStandalone
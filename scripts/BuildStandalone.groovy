@@ -21,6 +21,13 @@ import org.apache.ivy.core.report.ResolveReport
 import org.codehaus.groovy.grails.resolve.IvyDependencyManager
 import org.springframework.util.FileCopyUtils
 
+import java.security.MessageDigest
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
 /**
  * @author <a href='mailto:burt@burtbeckwith.com'>Burt Beckwith</a>
  */
@@ -98,7 +105,114 @@ buildWar = { File workDir ->
 
 buildJar = { File workDir, File jar, boolean jetty, File warfile = null ->
 
-	List<String> dependencyJars = resolveJars(jetty, buildSettings.config.grails.plugin.standalone)
+	def standaloneConfig = buildSettings.config.grails.plugin.standalone
+
+	boolean precompileJsp = argsMap.precompileJsp || standaloneConfig.precompileJsp
+	if (precompileJsp && jetty) {
+		event 'StatusUpdate', ['JSP precompilation is only supported for Tomcat, skipping']
+		precompileJsp = false
+	}
+
+	// with precompiled JSPs there's nothing left for Jasper to compile at runtime
+	boolean includeEcj = precompileJsp ? standaloneConfig.includeEcj == true : standaloneConfig.includeEcj != false
+
+	File payloadDir = buildPayload(jetty, standaloneConfig, includeEcj)
+	if (!payloadDir) {
+		return false
+	}
+
+	File embeddedWar = warfile ?: new File(workDir, 'embedded.war')
+
+	if (precompileJsp) {
+		embeddedWar = precompileJsps(workDir, embeddedWar, standaloneConfig)
+		if (!embeddedWar) {
+			return false
+		}
+	}
+	else if (!includeEcj && warContainsJsps(embeddedWar)) {
+		event 'StatusUpdate', ['WARNING: the war contains JSPs but ECJ is excluded, so they cannot be compiled at runtime']
+	}
+
+	if (argsMap.precompress || standaloneConfig.precompress) {
+		embeddedWar = precompressStaticResources(workDir, embeddedWar, standaloneConfig)
+	}
+
+	// resources generated for this war that go in the root of the jar
+	File jarResourcesDir = new File(workDir, 'jar-resources')
+	jarResourcesDir.mkdirs()
+
+	// fingerprint the war so the launcher can key its extraction cache without reading it
+	new File(jarResourcesDir, 'embedded.war.sha1').text = sha1(embeddedWar)
+
+	if (standaloneConfig.jarScanIndex != false) {
+		writeJarScanIndex embeddedWar, new File(jarResourcesDir, 'standalone-jarscan.properties')
+	}
+
+	if (standaloneConfig.etagManifest != false) {
+		writeEtagManifest embeddedWar, new File(jarResourcesDir, 'standalone-etags.properties')
+	}
+
+	// the jar is rebuilt from the cached payload rather than updated entry by entry: Ant's
+	// update mode still writes every entry to a new file, so it wouldn't save anything
+	jar.canonicalFile.parentFile.mkdirs()
+	ant.jar(destfile: jar) {
+		fileset dir: payloadDir
+		fileset dir: jarResourcesDir
+		manifest {
+			attribute name: 'Main-Class', value: resolveMainClass(jetty)
+		}
+	}
+
+	// add the war uncompressed so the launcher can stream it directly from the jar file
+	ant.jar(destfile: jar, update: true, compress: false, keepcompression: true) {
+		zipfileset file: embeddedWar, fullpath: 'embedded.war'
+	}
+
+	true
+}
+
+/**
+ * Builds the part of the jar that doesn't depend on the war - the compiled launcher
+ * and the unpacked server jars - in a cache directory under the project work dir
+ * that's reused until the dependencies or the launcher source change.
+ */
+buildPayload = { boolean jetty, standaloneConfig, boolean includeEcj ->
+
+	List<String> dependencyJars = resolveJars(jetty, standaloneConfig, includeEcj)
+	if (dependencyJars == null) {
+		event 'StatusError', ['Unable to resolve the standalone server dependencies']
+		return null
+	}
+
+	File pluginDir = new PluginBuildSettings(buildSettings).getPluginDirForName('standalone').file
+	List<File> sources = []
+	for (String path in ['src/java', 'src/runtime']) {
+		new File(standalonePluginDir, path).eachFileRecurse { File f -> if (f.name.endsWith('.java')) sources << f }
+	}
+	if (jetty) {
+		sources << new File(pluginDir, 'grails-app/conf/webdefault.xml')
+	}
+
+	String prefix = jetty ? 'jetty-' : 'tomcat-'
+	List<String> fingerprints = [System.getProperty('java.version')]
+	for (String path in dependencyJars) {
+		File f = new File(path)
+		fingerprints << "$path:$f.length():${f.lastModified()}".toString()
+	}
+	for (File f in sources.sort()) {
+		fingerprints << "$f.path:$f.length():${f.lastModified()}".toString()
+	}
+	String key = sha1(fingerprints.join('\n').getBytes('UTF-8'))
+
+	File cacheDir = new File(grailsSettings.projectWorkDir, 'standalone-payload').absoluteFile
+	File payloadDir = new File(cacheDir, prefix + key)
+	if (payloadDir.directory) {
+		event 'StatusUpdate', ["Using cached launcher and server classes from $payloadDir.path"]
+		return payloadDir
+	}
+
+	File stagingDir = new File(cacheDir, prefix + key + '.tmp-' + System.currentTimeMillis())
+	stagingDir.mkdirs()
 
 	ant.path(id: 'standalone.cp') { dependencyJars.each { pathelement(path: it) } }
 
@@ -112,11 +226,20 @@ buildJar = { File workDir, File jar, boolean jetty, File warfile = null ->
 		 javaVersion = javaVersion.min(new BigDecimal('1.7'))
 	}
 
-	ant.javac(destdir: workDir, compiler: 'javac' + javaVersion, source: '1.5', target: '1.5',
+	ant.javac(destdir: stagingDir, compiler: 'javac' + javaVersion, source: '1.5', target: '1.5',
 	          debug: true, listfiles: true, classpathref: 'standalone.cp', includeAntRuntime: false) {
 		src(path: new File(standalonePluginDir, 'src/java').path)
 		src(path: new File(standalonePluginDir, 'src/runtime').path)
 		include(name: 'grails/plugin/standalone/AbstractLauncher.java')
+		include(name: 'grails/plugin/standalone/AdminServer.java')
+		include(name: 'grails/plugin/standalone/LatencyHistogram.java')
+		include(name: 'grails/plugin/standalone/AsyncAccessLogWriter.java')
+		include(name: 'grails/plugin/standalone/ResponseCache.java')
+		include(name: 'grails/plugin/standalone/StaticEtagFilter.java')
+		if (!jetty || hasServlet31Api(standaloneConfig)) {
+			// the filter's output stream implements the servlet 3.1 non-blocking methods
+			include(name: 'grails/plugin/standalone/ResponseCacheFilter.java')
+		}
 		if (jetty) {
 			include(name: 'grails/plugin/standalone/JettyLauncher.java')
 		}
@@ -126,46 +249,314 @@ buildJar = { File workDir, File jar, boolean jetty, File warfile = null ->
 	}
 
 	for (jarPath in dependencyJars) {
-		ant.unjar src: jarPath, dest: workDir
+		ant.unjar src: jarPath, dest: stagingDir
 	}
 
 	if (jetty) {
 		// Jetty requires a 'defaults descriptor' on the filesystem
-		File webDefaults = new File(workDir, 'webdefault.xml')
-		File pluginDir = new PluginBuildSettings(buildSettings).getPluginDirForName('standalone').file
-		FileCopyUtils.copy new File(pluginDir, 'grails-app/conf/webdefault.xml'), webDefaults
+		FileCopyUtils.copy new File(pluginDir, 'grails-app/conf/webdefault.xml'), new File(stagingDir, 'webdefault.xml')
 	}
 
-	jar.canonicalFile.parentFile.mkdirs()
-	ant.jar(destfile: jar) {
-		fileset dir: workDir
-		if (warfile) {
-			zipfileset file: warfile, fullpath: 'embedded.war'
+	if (!stagingDir.renameTo(payloadDir)) {
+		if (!payloadDir.directory) {
+			event 'StatusError', ["Unable to move $stagingDir to $payloadDir"]
+			return null
 		}
-		manifest {
-			attribute name: 'Main-Class', value: resolveMainClass(jetty)
+		// a concurrent build finished the same payload first
+		stagingDir.deleteDir()
+	}
+
+	// complete payloads for other dependency sets are stale now; staging dirs may belong
+	// to builds still running, so they're only removed once they're clearly abandoned
+	long abandoned = System.currentTimeMillis() - 24 * 60 * 60 * 1000
+	cacheDir.eachDir { File dir ->
+		if (!dir.name.startsWith(prefix) || dir == payloadDir) {
+			return
+		}
+		def staging = dir.name =~ /\.tmp-(\d+)$/
+		if (staging ? staging[0][1].toLong() < abandoned : dir.name ==~ /${prefix}[0-9a-f]{40}/) {
+			dir.deleteDir()
 		}
 	}
 
-	true
+	payloadDir
 }
 
+/**
+ * Removes the Tomcat jars (other than the logging and JDBC pool jars) from the war
+ * since they're provided by the standalone server. The war is filtered while it's
+ * copied instead of being expanded and zipped again, and isn't rewritten at all if
+ * there's nothing to remove.
+ */
 removeTomcatJarsFromWar = { File workDir, File warfile ->
-	def expandedDir = new File(workDir, 'expanded').absoluteFile
-	ant.unzip src: warfile, dest: expandedDir
-	for (file in new File(expandedDir, 'WEB-INF/lib').listFiles()) {
-		if (file.name.startsWith('tomcat-') && !['embed-logging', 'jdbc', 'pool'].any { file.name.contains it }) {
-			assert file.delete()
+	List<String> excluded = []
+	ZipFile zip = new ZipFile(warfile)
+	try {
+		for (ZipEntry entry in zip.entries()) {
+			String name = entry.name
+			if (name.startsWith('WEB-INF/lib/tomcat-') && name.indexOf('/', 'WEB-INF/lib/'.length()) == -1 &&
+			    !['embed-logging', 'jdbc', 'pool'].any { name.contains it }) {
+				excluded << name
+			}
+		}
+	}
+	finally {
+		zip.close()
+	}
+
+	if (!excluded) {
+		return
+	}
+
+	File filtered = new File(workDir, 'filtered.war').absoluteFile
+	ant.zip(destfile: filtered) {
+		zipfileset(src: warfile) {
+			for (String name in excluded) {
+				exclude name: name
+			}
 		}
 	}
 	assert warfile.delete()
-	ant.zip basedir: expandedDir, destfile: warfile
-	assert expandedDir.deleteDir()
+	assert filtered.renameTo(warfile)
+}
+
+/**
+ * Writes the index of the jars in WEB-INF/lib that the server actually needs to scan
+ * at startup, see JarScanIndexer. The launcher uses the lists to skip every other jar.
+ */
+writeJarScanIndex = { File warfile, File indexFile ->
+	// scripts are compiled before the plugin's classes, so it's loaded from the compiled classes
+	def indexer = classLoader.loadClass('grails.plugin.standalone.JarScanIndexer').newInstance()
+	Properties index = indexer.index(warfile)
+	indexFile.withOutputStream { index.store it, null }
+
+	List<String> handlesTypes = indexer.initializersWithHandlesTypes
+	if (handlesTypes) {
+		event 'StatusUpdate', ["Indexed $indexer.jarCount jars: ${indexer.tldJars.size()} with TLDs, " +
+		                       "${indexer.fragmentJars.size()} with web fragments; with Tomcat all jars will be scanned " +
+		                       "for annotations and initializers since ${handlesTypes.join(', ')} declare @HandlesTypes"]
+	}
+	else {
+		event 'StatusUpdate', ["Indexed $indexer.jarCount jars: ${indexer.tldJars.size()} with TLDs, " +
+		                       "${indexer.pluggabilityJars.size()} with web fragments, initializers or annotations"]
+	}
+}
+
+/**
+ * Compiles the war's JSPs with Jasper's JspC and adds the generated servlets and their
+ * web.xml mappings to the war, so requests for them never reach the runtime compiler.
+ * GSPs need no extra step since the war script already precompiles them. A war file
+ * that isn't in the work dir is copied first so it isn't modified.
+ */
+precompileJsps = { File workDir, File warfile, standaloneConfig ->
+
+	if (!warContainsJsps(warfile)) {
+		event 'StatusUpdate', ['No JSPs to precompile']
+		return warfile
+	}
+
+	if (warfile.parentFile.canonicalFile != workDir.canonicalFile) {
+		File copy = new File(workDir, 'embedded.war')
+		FileCopyUtils.copy warfile, copy
+		warfile = copy
+	}
+
+	// JspC needs Jasper and ECJ even though the jar may not include ECJ
+	List<String> jspcJars = resolveJars(false, standaloneConfig, true)
+	if (jspcJars == null) {
+		event 'StatusError', ['Unable to resolve the JSP compiler dependencies']
+		return null
+	}
+
+	File webappDir = new File(workDir, 'jspc-webapp').absoluteFile
+	ant.delete dir: webappDir, quiet: true
+	ant.unzip src: warfile, dest: webappDir
+
+	long start = System.currentTimeMillis()
+	ant.java(classname: 'org.apache.jasper.JspC', fork: true, failonerror: true) {
+		classpath {
+			for (String path in jspcJars) {
+				pathelement location: path
+			}
+			fileset dir: new File(webappDir, 'WEB-INF/lib'), includes: '*.jar', erroronmissingdir: false
+			pathelement location: new File(webappDir, 'WEB-INF/classes')
+		}
+		arg value: '-webapp'
+		arg value: webappDir.path
+		arg value: '-d'
+		arg value: new File(webappDir, 'WEB-INF/classes').path
+		arg value: '-javaEncoding'
+		arg value: standaloneConfig.jspEncoding ?: 'UTF-8'
+		arg value: '-addWebXmlMappings'
+		arg value: '-compile'
+		arg value: '-failFast'
+	}
+
+	ant.zip(destfile: warfile, update: true) {
+		fileset(dir: webappDir) {
+			include name: 'WEB-INF/web.xml'
+			include name: 'WEB-INF/classes/org/apache/jsp/**/*.class'
+		}
+	}
+	ant.delete dir: webappDir, quiet: true
+
+	event 'StatusUpdate', ["Precompiled JSPs in ${System.currentTimeMillis() - start}ms"]
+
+	warfile
+}
+
+boolean warContainsJsps(File warfile) {
+	ZipFile zip = new ZipFile(warfile)
+	try {
+		zip.entries().any { ZipEntry entry -> entry.name.endsWith('.jsp') || entry.name.endsWith('.jspx') }
+	}
+	finally {
+		zip.close()
+	}
+}
+
+/**
+ * Records a content digest for each static resource (everything outside WEB-INF
+ * and META-INF, including precompressed siblings) for the launcher's strong ETags,
+ * which unlike the servers' size/time ETags don't change when the war is rebuilt
+ * or extracted again.
+ */
+writeEtagManifest = { File warfile, File manifestFile ->
+	Properties manifest = new Properties()
+	byte[] buffer = new byte[65536]
+
+	ZipFile zip = new ZipFile(warfile)
+	try {
+		for (ZipEntry entry in zip.entries()) {
+			String name = entry.name
+			if (entry.directory || name.startsWith('WEB-INF/') || name.startsWith('META-INF/')) {
+				continue
+			}
+
+			MessageDigest digest = MessageDigest.getInstance('SHA-256')
+			InputStream input = zip.getInputStream(entry)
+			try {
+				for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+					digest.update buffer, 0, length
+				}
+			}
+			finally {
+				input.close()
+			}
+			// 128 bits is plenty to tell versions of one file apart
+			manifest['/' + name] = new BigInteger(1, digest.digest()).toString(16).padLeft(64, '0').substring(0, 32)
+		}
+	}
+	finally {
+		zip.close()
+	}
+
+	manifestFile.withOutputStream { manifest.store it, null }
+	event 'StatusUpdate', ["Wrote ETags for ${manifest.size()} static resources"]
 }
 
-resolveJars = { boolean jetty, standaloneConfig ->
+/**
+ * Adds a gzipped sibling (e.g. main.css.gz) for each static resource that compresses
+ * well, so the server can send those instead of compressing on every request. A war
+ * file that isn't in the work dir (i.e. one specified with --warfile) is copied first
+ * so it isn't modified.
+ */
+precompressStaticResources = { File workDir, File warfile, standaloneConfig ->
+
+	def extensions = standaloneConfig.precompressExtensions ?: ['css', 'htm', 'html', 'js', 'json', 'map', 'svg', 'txt', 'xml']
+	int minSize = standaloneConfig.precompressMinSize ?: 1024
+
+	if (warfile.parentFile.canonicalFile != workDir.canonicalFile) {
+		File copy = new File(workDir, 'embedded.war')
+		FileCopyUtils.copy warfile, copy
+		warfile = copy
+	}
+
+	File compressedDir = new File(workDir, 'precompressed').absoluteFile
+	int count = 0
+	long originalBytes = 0
+	long compressedBytes = 0
+
+	ZipFile zip = new ZipFile(warfile)
+	try {
+		Set<String> names = zip.entries()*.name as Set
+		for (ZipEntry entry in zip.entries()) {
+			String name = entry.name
+			if (entry.directory || name.startsWith('WEB-INF/') || name.startsWith('META-INF/') ||
+			    entry.size < minSize || names.contains(name + '.gz') ||
+			    !extensions.contains(name.substring(name.lastIndexOf('.') + 1).toLowerCase())) {
+				continue
+			}
+
+			byte[] bytes = zip.getInputStream(entry).bytes
+			byte[] compressed = gzip(bytes)
+			if (compressed.length >= bytes.length) {
+				continue
+			}
+
+			File file = new File(compressedDir, name + '.gz')
+			file.parentFile.mkdirs()
+			file.bytes = compressed
+			count++
+			originalBytes += bytes.length
+			compressedBytes += compressed.length
+		}
+	}
+	finally {
+		zip.close()
+	}
 
-	def deps = [standaloneConfig.ecjDependency ?: 'org.eclipse.jdt.core.compiler:ecj:4.5.1']
+	if (count) {
+		ant.zip destfile: warfile, update: true, basedir: compressedDir
+		event 'StatusUpdate', ["Precompressed $count static resources ($originalBytes bytes to $compressedBytes bytes)"]
+	}
+
+	warfile
+}
+
+/**
+ * Gzips with the maximum compression level; GZIPOutputStream doesn't allow setting it.
+ */
+gzip = { byte[] bytes ->
+	CRC32 crc = new CRC32()
+	crc.update bytes
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream()
+	// magic number, deflate, no flags, no mtime, maximum compression, unknown OS
+	out.write([0x1f, 0x8b, 8, 0, 0, 0, 0, 0, 2, 255] as byte[])
+
+	Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true)
+	DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater)
+	deflaterOut.write bytes
+	deflaterOut.finish()
+	deflater.end()
+
+	for (long value in [crc.value, bytes.length]) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			out.write((int) ((value >> shift) & 0xFF))
+		}
+	}
+
+	out.toByteArray()
+}
+
+sha1 = { input ->
+	MessageDigest digest = MessageDigest.getInstance('SHA-1')
+	if (input instanceof File) {
+		input.eachByte(65536) { byte[] buffer, int length -> digest.update buffer, 0, length }
+	}
+	else {
+		digest.update((byte[]) input)
+	}
+	new BigInteger(1, digest.digest()).toString(16).padLeft(40, '0')
+}
+
+resolveJars = { boolean jetty, standaloneConfig, boolean includeEcj = true ->
+
+	def deps = []
+	if (includeEcj) {
+		deps << (standaloneConfig.ecjDependency ?: 'org.eclipse.jdt.core.compiler:ecj:4.5.1')
+	}
 
 	if (jetty) {
 		deps.addAll calculateJettyDependencies(standaloneConfig)
@@ -218,6 +609,14 @@ calculateJettyDependencies = { standaloneConfig ->
 	['org.eclipse.jetty.aggregate:jetty-all:' + jettyVersion, servletApiDep]
 }
 
+/**
+ * Tomcat always uses its own servlet API; Jetty uses the one for the app's servlet version.
+ */
+boolean hasServlet31Api(standaloneConfig) {
+	String[] parts = calculateJettyDependencies(standaloneConfig)[1].split(':')
+	parts.length > 2 && parts[1] == 'javax.servlet-api' && !parts[2].startsWith('3.0')
+}
+
 calculateTomcatDependencies = { standaloneConfig ->
 
 	String tomcatVersion = standaloneConfig.tomcatVersion ?: '9.0.0.M4'
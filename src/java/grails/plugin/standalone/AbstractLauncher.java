@@ -15,23 +15,67 @@
 package grails.plugin.standalone;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import javax.servlet.ServletException;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
 /**
  * Abstract base class for the Tomcat and Jetty launchers.
  *
@@ -39,19 +83,54 @@ import javax.servlet.ServletException;
  */
 public abstract class AbstractLauncher {
 
-	protected static final int BUFFER_SIZE = 4096;
+	protected static final int BUFFER_SIZE = 64 * 1024;
+	protected static final int MIN_BUFFER_SIZE = 8 * 1024;
 
 	protected static final List<String> SUPPORTED_ARGS = Arrays.asList(
-		"certificateFile", "certificateKeyFile", "certificateKeyPassword", "compressableMimeTypes",
-		"context", "enableClientAuth", "enableCompression", "enableProxySupport", "host", "httpsPort",
-		"javax.net.ssl.keyStore", "javax.net.ssl.keyStorePassword", "javax.net.ssl.trustStore",
-		"javax.net.ssl.trustStorePassword", "keystorePassword", "keystorePath", "nio", "port", "serverName",
-		"sessionTimeout", "tomcat.nio", "trustStorePassword", "truststorePath", "workDir");
+		"acceptCount", "acceptors", "accessLog", "accessLogBufferSize", "accessLogMaxSize",
+		"accessLogRotateInterval", "adminHost", "adminPort", "backgroundProcessorDelay", "bufferSize", "cds",
+		"cdsArchive", "cdsChildJvmArgs", "cdsTrainingRun", "certificateFile", "certificateKeyFile",
+		"certificateKeyPassword", "compressableMimeTypes", "connectionTimeout", "context", "crawlerSessionInactiveInterval",
+		"crawlerUserAgents", "crawlerValve", "enableClientAuth", "enableCompression", "enableH2c",
+		"enableHttp2", "enableProxySupport", "etagManifest", "explodeWar", "extractionCache",
+		"extractionCacheRetain", "extractThreads", "fileMappedBuffer", "host", "httpsPort", "idleTimeout",
+		"jarScanIndex", "javax.net.ssl.keyStore", "javax.net.ssl.keyStorePassword", "javax.net.ssl.trustStore",
+		"javax.net.ssl.trustStorePassword", "keepAliveTimeout", "keystorePassword", "keystorePath",
+		"maxActiveSessions", "maxCachedFileSize", "maxConnections", "maxKeepAliveRequests", "maxThreads",
+		"metrics", "metricsLogInterval", "minSpareThreads", "nio", "port", "precompressed", "resourceCache",
+		"resourceCacheMaxSize", "resourceCacheObjectMaxSize", "resourceCacheReportInterval",
+		"resourceCacheTtl", "responseCache", "responseCacheCoalesceTimeout", "responseCacheMaxEntrySize",
+		"responseCacheMaxSize", "sendfileSize", "serverName", "sessionMaxIdleSwap", "sessionMinIdleSwap",
+		"sessionStore", "sessionStoreDir", "sessionTimeout", "sharedExecutor", "shutdownPort",
+		"shutdownTimeout", "shutdownToken", "sslImplementation", "startStopThreads", "startupTimings",
+		"staticCacheControl", "streamExtract", "tomcat.nio", "trustStorePassword", "truststorePath",
+		"virtualThreads", "warmupConcurrency", "warmupIterations", "warmupTimeout", "warmupUrls", "workDir",
+		"workDirGc");
+
+	protected static final String EXTRACTION_MARKER = "WEB-INF/.standalone-extraction";
+
+	protected static final String TRASH_MARKER = ".trash-";
+
+	protected static final String CDS_CHILD_PROPERTY = "grails.plugin.standalone.cds.child";
 
 	protected Map<String, String> argsMap;
+	protected boolean extractionCached;
+	protected int bufferSize;
+	protected final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>();
+	protected String shutdownReport;
+	protected AdminServer adminServer;
+	protected FileChannel cacheLocks;
+	protected AsyncAccessLogWriter accessLog;
+	protected ResponseCache responseCache;
+	protected final LatencyHistogram requestLatency = new LatencyHistogram();
+	protected long[] lastMetricsSnapshot;
+	protected long lastMetricsReport = System.currentTimeMillis();
+	protected final Map<String, Long> startupPhases = new LinkedHashMap<String, Long>();
+	protected long lastPhaseMark = ManagementFactory.getRuntimeMXBean().getStartTime();
 
 	protected AbstractLauncher(String[] args) {
 		argsMap = argsToMap(args);
+		markPhase("JVM startup");
 	}
 
 	protected File getWorkDir() {
@@ -59,15 +138,309 @@ public abstract class AbstractLauncher {
 	}
 
 	protected File extractWar() throws IOException {
+		// a class data sharing archive records class locations, so they must be the same every launch
+		if (getBooleanArg("extractionCache", false) || getBooleanArg("cds", false) || getBooleanArg("cdsTrainingRun", false)) {
+			File exploded = extractCachedWar();
+			collectGarbage();
+			return exploded;
+		}
+
 		File dir = new File(getWorkDir(), "standalone-war");
-		deleteDir(dir);
+		moveAside(dir);
+		collectGarbage();
 		dir.mkdirs();
 		return extractWar(dir);
 	}
 
 	protected File extractWar(File dir) throws IOException {
-		return extractWar(getResourceAsStream("embedded.war"),
-				File.createTempFile("embedded", ".war", dir).getAbsoluteFile());
+		if (getBooleanArg("streamExtract", false)) {
+			return explode(openEmbeddedWar(), new File(dir, "embedded-exploded-" + System.currentTimeMillis()));
+		}
+
+		File war = File.createTempFile("embedded", ".war", dir).getAbsoluteFile();
+		war.deleteOnExit();
+		long start = System.currentTimeMillis();
+		copyEmbeddedWar(war);
+		logTransferRate("Copied", war.length(), System.currentTimeMillis() - start);
+		return explode(war);
+	}
+
+	/**
+	 * Copies the embedded war to a file. If it's stored uncompressed in the launcher
+	 * jar the bytes are transferred directly between the file channels, which the OS
+	 * can do without copying them through the heap.
+	 */
+	protected void copyEmbeddedWar(File destination) throws IOException {
+		File jar = getLauncherJar();
+		long[] region = jar == null ? null : findStoredEntry(jar, "embedded.war");
+		if (region == null) {
+			copy(getResourceAsStream("embedded.war"), new FileOutputStream(destination));
+			return;
+		}
+
+		FileInputStream inputStream = new FileInputStream(jar);
+		FileOutputStream outputStream = new FileOutputStream(destination);
+		try {
+			transfer(inputStream.getChannel(), region[0], region[1], outputStream.getChannel());
+		}
+		finally {
+			close(outputStream);
+			close(inputStream);
+		}
+	}
+
+	/**
+	 * Transfers the region with transferTo, which can stop short or (on some platforms
+	 * and file systems) keep returning 0 without reaching the end; after a few calls in
+	 * a row that make no progress the rest is copied through a buffer.
+	 */
+	protected void transfer(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+		long position = 0;
+		int stalled = 0;
+		while (position < length) {
+			if (offset + position >= in.size()) {
+				throw new IOException("Unexpected end of file after " + position + " of " + length + " bytes");
+			}
+
+			long transferred = in.transferTo(offset + position, length - position, out);
+			if (transferred > 0) {
+				position += transferred;
+				stalled = 0;
+			}
+			else if (++stalled == 3) {
+				position += copyRegion(in, offset + position, length - position, out);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes copied, which is less than the length only at the end of the file
+	 */
+	protected long copyRegion(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(getBuffer(getBufferSize()), 0, getBufferSize());
+		long copied = 0;
+		while (copied < length) {
+			buffer.clear();
+			buffer.limit((int) Math.min(getBufferSize(), length - copied));
+			int bytesRead = in.read(buffer, offset + copied);
+			if (bytesRead == -1) {
+				break;
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			copied += bytesRead;
+		}
+		return copied;
+	}
+
+	/**
+	 * Extracts the war into a directory under 'standalone-war-cache' named for the
+	 * digest of the embedded war, or reuses it if a previous launch already did.
+	 * The tree is extracted to a staging directory and renamed into place once it's
+	 * complete, so concurrent launches sharing a work dir never see a partial tree,
+	 * and the entry is locked while the server runs so their garbage collection
+	 * doesn't remove it.
+	 */
+	protected File extractCachedWar() throws IOException {
+		File cacheDir = new File(getWorkDir(), "standalone-war-cache");
+		cacheDir.mkdirs();
+
+		String key = getEmbeddedWarDigest();
+		lockCacheEntry(key);
+		File exploded = new File(cacheDir, key);
+		if (isCompleteExtraction(exploded, key)) {
+			System.out.println("Using cached extraction " + exploded);
+			// the garbage collection keeps the most recently used entries
+			exploded.setLastModified(System.currentTimeMillis());
+			extractionCached = true;
+			return exploded;
+		}
+
+		File staging = new File(cacheDir, key + ".staging-" + System.nanoTime());
+		staging.mkdirs();
+		try {
+			File extracted = extractWar(staging);
+			writeExtractionMarker(extracted, key);
+
+			if (exploded.exists() && !isCompleteExtraction(exploded, key)) {
+				File stale = new File(cacheDir, key + ".stale-" + System.nanoTime());
+				if (exploded.renameTo(stale)) {
+					deleteDir(stale);
+				}
+			}
+
+			if (!extracted.renameTo(exploded) && !isCompleteExtraction(exploded, key)) {
+				throw new IOException("Unable to move " + extracted + " to " + exploded);
+			}
+		}
+		finally {
+			deleteDir(staging);
+		}
+
+		extractionCached = true;
+		return exploded;
+	}
+
+	/**
+	 * Copies the embedded war to 'standalone-war-cache/&lt;digest&gt;.war' under the work
+	 * dir without exploding it, reusing the copy from a previous launch if present.
+	 * If the war is stored uncompressed in the launcher jar it's transferred directly
+	 * between the file channels.
+	 * <p>
+	 * The war can't be served from inside the launcher jar: Tomcat's WarResourceSet
+	 * and the webapp class loader open the docBase with java.util.jar.JarFile, which
+	 * only reads a zip that's a file of its own, and Tomcat's nested resource sets
+	 * only handle jars inside a war, not a war inside a jar. So the first launch with
+	 * a new war (or an empty work dir) makes one copy; keep the work dir on a
+	 * persistent volume to skip it on later launches.
+	 */
+	protected File extractPackedWar() throws IOException {
+		File cacheDir = new File(getWorkDir(), "standalone-war-cache");
+		cacheDir.mkdirs();
+
+		String key = getEmbeddedWarDigest();
+		lockCacheEntry(key);
+		File war = new File(cacheDir, key + ".war");
+		// only complete copies are ever renamed into place
+		if (war.isFile()) {
+			System.out.println("Using cached war " + war);
+			war.setLastModified(System.currentTimeMillis());
+			extractionCached = true;
+			collectGarbage();
+			return war;
+		}
+
+		long start = System.currentTimeMillis();
+		File staging = new File(cacheDir, key + ".war.staging-" + System.nanoTime());
+		try {
+			copyEmbeddedWar(staging);
+
+			if (!staging.renameTo(war) && !war.isFile()) {
+				throw new IOException("Unable to move " + staging + " to " + war);
+			}
+		}
+		finally {
+			staging.delete();
+		}
+
+		logTransferRate("Copied", war.length(), System.currentTimeMillis() - start);
+
+		extractionCached = true;
+		collectGarbage();
+		return war;
+	}
+
+	/**
+	 * The marker is written into the staging tree after every entry is extracted and
+	 * before it's renamed into place, so its presence means the extraction finished.
+	 * Only the war's top-level entries are checked beyond that, which catches a tree
+	 * that was partly deleted without walking it, and files the application writes
+	 * into its docBase don't count against it.
+	 */
+	protected boolean isCompleteExtraction(File exploded, String key) {
+		File marker = new File(exploded, EXTRACTION_MARKER);
+		if (!marker.isFile()) {
+			return false;
+		}
+
+		Properties properties = new Properties();
+		InputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(marker);
+			properties.load(inputStream);
+		}
+		catch (IOException e) {
+			return false;
+		}
+		finally {
+			close(inputStream);
+		}
+
+		String entries = properties.getProperty("entries");
+		if (!key.equals(properties.getProperty("key")) || entries == null) {
+			return false;
+		}
+
+		// entry names can't contain '/', so it separates them
+		for (String name : entries.split("/")) {
+			if (name.length() > 0 && !new File(exploded, name).exists()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void writeExtractionMarker(File exploded, String key) throws IOException {
+		StringBuilder entries = new StringBuilder();
+		String[] names = exploded.list();
+		if (names != null) {
+			Arrays.sort(names);
+			for (String name : names) {
+				entries.append(name).append('/');
+			}
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("key", key);
+		properties.setProperty("entries", entries.toString());
+
+		File marker = new File(exploded, EXTRACTION_MARKER);
+		marker.getParentFile().mkdirs();
+		OutputStream outputStream = new FileOutputStream(marker);
+		try {
+			properties.store(outputStream, null);
+		}
+		finally {
+			close(outputStream);
+		}
+	}
+
+	/**
+	 * Uses the fingerprint written by build-standalone if there is one, otherwise
+	 * calculates the SHA-1 digest of the embedded war.
+	 */
+	protected String getEmbeddedWarDigest() throws IOException {
+		InputStream fingerprint = getResourceAsStream("embedded.war.sha1");
+		if (fingerprint != null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			copy(fingerprint, bytes);
+			String digest = new String(bytes.toByteArray(), "UTF-8").trim();
+			if (digest.matches("[0-9a-fA-F]{40}")) {
+				return digest.toLowerCase();
+			}
+		}
+
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		InputStream inputStream = getResourceAsStream("embedded.war");
+		try {
+			byte[] buffer = getBuffer(getBufferSize());
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				messageDigest.update(buffer, 0, bytesRead);
+			}
+		}
+		finally {
+			close(inputStream);
+		}
+
+		return toHex(messageDigest.digest());
+	}
+
+	protected String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
 	}
 
 	protected File extractWar(InputStream embeddedWarfile, File destinationWarfile) throws IOException {
@@ -85,15 +458,311 @@ public abstract class AbstractLauncher {
 		}
 		File explodedDir = new File(war.getParentFile(), basename + "-exploded-" + System.currentTimeMillis());
 
+		long start = System.currentTimeMillis();
+		long bytes = 0;
+
 		ZipFile zipfile = new ZipFile(war);
+		try {
+			int threads = getIntArg("extractThreads", 1);
+			if (threads > 1) {
+				bytes = explodeParallel(zipfile, explodedDir, threads);
+			}
+			else {
+				for (Enumeration<? extends ZipEntry> e = zipfile.entries(); e.hasMoreElements(); ) {
+					ZipEntry entry = e.nextElement();
+					unzip(entry, zipfile, explodedDir);
+					if (!entry.isDirectory()) {
+						bytes += Math.max(entry.getSize(), 0);
+					}
+				}
+			}
+		}
+		finally {
+			zipfile.close();
+		}
+
+		logTransferRate("Extracted", bytes, System.currentTimeMillis() - start);
+
+		return explodedDir;
+	}
+
+	/**
+	 * Explodes the war using a fixed pool of worker threads. All directories are
+	 * created up front so the workers only have to write files, and the largest
+	 * entries are submitted first so a few big jars don't end up on one thread
+	 * at the end.
+	 *
+	 * @return the total number of uncompressed bytes written
+	 */
+	protected long explodeParallel(final ZipFile zipfile, final File explodedDir, int threads) throws IOException {
+
+		List<ZipEntry> files = new ArrayList<ZipEntry>();
+		Set<File> dirs = new LinkedHashSet<File>();
+		long bytes = 0;
+
 		for (Enumeration<? extends ZipEntry> e = zipfile.entries(); e.hasMoreElements(); ) {
-			unzip(e.nextElement(), zipfile, explodedDir);
+			ZipEntry entry = e.nextElement();
+			File file = new File(explodedDir, entry.getName());
+			if (entry.isDirectory()) {
+				dirs.add(file);
+			}
+			else {
+				dirs.add(file.getParentFile());
+				files.add(entry);
+				bytes += Math.max(entry.getSize(), 0);
+			}
 		}
-		zipfile.close();
+
+		for (File dir : dirs) {
+			dir.mkdirs();
+		}
+
+		Collections.sort(files, new Comparator<ZipEntry>() {
+			public int compare(ZipEntry e1, ZipEntry e2) {
+				return Long.valueOf(e2.getSize()).compareTo(e1.getSize());
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())),
+				newDaemonThreadFactory("standalone-extract"));
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(files.size());
+			for (final ZipEntry entry : files) {
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						unzip(entry, zipfile, explodedDir);
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while extracting " + zipfile.getName());
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Explodes the war in a single pass as it's read, without copying it to a
+	 * temp file first. Always serial since entries can only be read in order.
+	 */
+	protected File explode(InputStream war, File explodedDir) throws IOException {
+		long start = System.currentTimeMillis();
+		long bytes = 0;
+
+		final ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(war, getBufferSize()));
+		// copy() closes its streams, but the zip stream has to stay open for the next entry
+		InputStream entryStream = new FilterInputStream(zipInputStream) {
+			@Override
+			public void close() {
+				// the outer finally block closes the zip stream
+			}
+		};
+		try {
+			for (ZipEntry entry; (entry = zipInputStream.getNextEntry()) != null; ) {
+				File file = new File(explodedDir, entry.getName());
+				if (entry.isDirectory()) {
+					file.mkdirs();
+					continue;
+				}
+
+				file.getParentFile().mkdirs();
+				copy(entryStream, new FileOutputStream(file), entry.getSize());
+				// the sizes are known once the entry has been read, even with a data descriptor
+				bytes += Math.max(entry.getSize(), 0);
+				setLastModified(file, entry);
+			}
+		}
+		finally {
+			close(zipInputStream);
+		}
+
+		logTransferRate("Extracted", bytes, System.currentTimeMillis() - start);
 
 		return explodedDir;
 	}
 
+	/**
+	 * Opens the embedded war. If it's stored uncompressed in the launcher jar
+	 * the bytes are read directly from the jar file at the entry's offset,
+	 * otherwise this falls back to the classloader resource stream. The stream
+	 * is bounded to the entry so nothing past the end of the war can be read.
+	 */
+	protected InputStream openEmbeddedWar() throws IOException {
+		File jar = getLauncherJar();
+		if (jar != null) {
+			long[] region = findStoredEntry(jar, "embedded.war");
+			if (region != null) {
+				FileInputStream inputStream = new FileInputStream(jar);
+				inputStream.getChannel().position(region[0]);
+				return new BoundedInputStream(inputStream, region[1]);
+			}
+		}
+
+		return getResourceAsStream("embedded.war");
+	}
+
+	/**
+	 * Limits reads to the first 'length' bytes of the wrapped stream.
+	 */
+	protected static class BoundedInputStream extends FilterInputStream {
+
+		protected long remaining;
+
+		public BoundedInputStream(InputStream in, long length) {
+			super(in);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int bytesRead = super.read(b, off, (int) Math.min(len, remaining));
+			if (bytesRead > 0) {
+				remaining -= bytesRead;
+			}
+			return bytesRead;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	protected File getLauncherJar() {
+		try {
+			CodeSource codeSource = getClass().getProtectionDomain().getCodeSource();
+			if (codeSource != null) {
+				File file = new File(codeSource.getLocation().toURI());
+				if (file.isFile()) {
+					return file;
+				}
+			}
+		}
+		catch (Exception ignored) {
+			// fall back to the classloader
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the central directory of a zip file to find an uncompressed entry.
+	 *
+	 * @return the offset of the entry data and its length, or null if the entry
+	 * isn't found or is compressed
+	 */
+	protected long[] findStoredEntry(File zip, String name) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(zip, "r");
+		try {
+			// the end of central directory record is 22 bytes plus a comment of up to 64K
+			int tailLength = (int) Math.min(file.length(), 22 + 65535);
+			ByteBuffer tail = readFully(file, file.length() - tailLength, tailLength);
+			int eocd = -1;
+			for (int i = tailLength - 22; i >= 0; i--) {
+				if (tail.getInt(i) == 0x06054b50) {
+					eocd = i;
+					break;
+				}
+			}
+			if (eocd == -1) {
+				return null;
+			}
+
+			long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+			long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+			if (directoryOffset == 0xFFFFFFFFL) {
+				// zip64, not worth supporting here
+				return null;
+			}
+
+			ByteBuffer directory = readFully(file, directoryOffset, (int) directorySize);
+			byte[] nameBytes = name.getBytes("UTF-8");
+			int position = 0;
+			while (position + 46 <= directorySize && directory.getInt(position) == 0x02014b50) {
+				int method = directory.getShort(position + 10) & 0xFFFF;
+				long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+				int nameLength = directory.getShort(position + 28) & 0xFFFF;
+				int extraLength = directory.getShort(position + 30) & 0xFFFF;
+				int commentLength = directory.getShort(position + 32) & 0xFFFF;
+				long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+				if (method == ZipEntry.STORED && nameLength == nameBytes.length) {
+					byte[] entryName = new byte[nameLength];
+					directory.position(position + 46);
+					directory.get(entryName);
+					if (Arrays.equals(entryName, nameBytes)) {
+						ByteBuffer localHeader = readFully(file, localHeaderOffset, 30);
+						if (localHeader.getInt(0) != 0x04034b50) {
+							return null;
+						}
+						long dataOffset = localHeaderOffset + 30 +
+								(localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+						return new long[] { dataOffset, size };
+					}
+				}
+
+				position += 46 + nameLength + extraLength + commentLength;
+			}
+
+			return null;
+		}
+		finally {
+			close(file);
+		}
+	}
+
+	protected ByteBuffer readFully(RandomAccessFile file, long offset, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		file.seek(offset);
+		file.readFully(bytes);
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
 	protected void unzip(ZipEntry entry, ZipFile zipfile, File explodedDir) throws IOException {
 
 		if (entry.isDirectory()) {
@@ -106,15 +775,19 @@ public abstract class AbstractLauncher {
 			outputFile.getParentFile().mkdirs();
 		}
 
-		BufferedInputStream inputStream = new BufferedInputStream(zipfile.getInputStream(entry));
-		BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFile));
+		// copy() reads into a buffer sized for the entry, so buffered streams would only add a copy
+		copy(zipfile.getInputStream(entry), new FileOutputStream(outputFile), entry.getSize());
+		setLastModified(outputFile, entry);
+	}
 
-		try {
-			copy(inputStream, outputStream);
-		}
-		finally {
-			close(outputStream);
-			close(inputStream);
+	/**
+	 * Keeps the war's timestamps so Last-Modified headers (and the containers'
+	 * size/time ETags) don't change every time the war is extracted.
+	 */
+	protected void setLastModified(File file, ZipEntry entry) {
+		long time = entry.getTime();
+		if (time > 0) {
+			file.setLastModified(time);
 		}
 	}
 
@@ -186,10 +859,29 @@ public abstract class AbstractLauncher {
 
 	// from org.springframework.util.FileCopyUtils.copy()
 	protected void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+		copy(inputStream, outputStream, -1);
+	}
+
+	/**
+	 * Copies and closes the streams. Between files the channels transfer the bytes
+	 * directly; otherwise they're read into this thread's reusable buffer, using at
+	 * most the expected size (if known) so small files don't touch a large buffer.
+	 */
+	protected void copy(InputStream inputStream, OutputStream outputStream, long expectedSize) throws IOException {
 		try {
-			byte[] buffer = new byte[BUFFER_SIZE];
+			if (inputStream instanceof FileInputStream && outputStream instanceof FileOutputStream) {
+				FileChannel in = ((FileInputStream) inputStream).getChannel();
+				transfer(in, in.position(), in.size() - in.position(), ((FileOutputStream) outputStream).getChannel());
+				return;
+			}
+
+			int size = getBufferSize();
+			if (expectedSize >= 0 && expectedSize < size) {
+				size = (int) Math.max(expectedSize + 1, MIN_BUFFER_SIZE);
+			}
+			byte[] buffer = getBuffer(size);
 			int bytesRead = -1;
-			while ((bytesRead = inputStream.read(buffer)) != -1) {
+			while ((bytesRead = inputStream.read(buffer, 0, size)) != -1) {
 				outputStream.write(buffer, 0, bytesRead);
 			}
 			outputStream.flush();
@@ -200,43 +892,311 @@ public abstract class AbstractLauncher {
 		}
 	}
 
-	// from DefaultGroovyMethods.deleteDir()
-	protected boolean deleteDir(final File dir) {
+	/**
+	 * @return the 'bufferSize' arg in kB converted to bytes, defaults to 64kB
+	 */
+	protected int getBufferSize() {
+		if (bufferSize == 0) {
+			bufferSize = Math.max(1, getIntArg("bufferSize", BUFFER_SIZE / 1024)) * 1024;
+		}
+		return bufferSize;
+	}
+
+	/**
+	 * @return this thread's buffer, grown if it's smaller than the size
+	 */
+	protected byte[] getBuffer(int size) {
+		byte[] buffer = buffers.get();
+		if (buffer == null || buffer.length < size) {
+			buffer = new byte[size];
+			buffers.set(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Renames a directory left by an earlier launch to '.&lt;name&gt;.trash-&lt;nanos&gt;'
+	 * so it can be deleted in the background; if it can't be renamed it's deleted now.
+	 *
+	 * @return the renamed directory, or null if there was nothing to rename
+	 */
+	protected File moveAside(File dir) {
 		if (!dir.exists()) {
-			return true;
+			return null;
 		}
 
-		if (!dir.isDirectory()) {
-			return false;
+		File trash = new File(dir.getParentFile(), "." + dir.getName() + TRASH_MARKER + System.nanoTime());
+		if (dir.renameTo(trash)) {
+			return trash;
 		}
 
-		File[] files = dir.listFiles();
-		if (files == null) {
-			return false;
+		deleteDir(dir);
+		return null;
+	}
+
+	/**
+	 * Deletes the directories renamed by moveAside() (including those from launches
+	 * that were killed before they could clean up) and all but the 'extractionCacheRetain'
+	 * most recently used extraction cache entries. Entries that a running server has
+	 * locked are kept, and the others are renamed first so a concurrent launch never
+	 * uses a partly deleted one.
+	 *
+	 * @return the thread deleting the garbage, or null if there's none
+	 */
+	protected Thread collectGarbage() {
+		if (!getBooleanArg("workDirGc", true)) {
+			return null;
 		}
 
-		boolean result = true;
-		for (File file : files) {
-			if (file.isDirectory()) {
-				if (!deleteDir(file)) {
-					result = false;
-				}
-			}
-			else {
-				if (!file.delete()) {
-					result = false;
+		List<File> garbage = new ArrayList<File>();
+
+		// the work dir may be shared (e.g. java.io.tmpdir), so only look for our own names there
+		File[] files = getWorkDir().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(".standalone-war" + TRASH_MARKER) ||
+						name.startsWith(".grails-standalone-tomcat" + TRASH_MARKER)) {
+					garbage.add(file);
 				}
 			}
 		}
 
-		if (!dir.delete()) {
-			result = false;
-		}
+		files = new File(getWorkDir(), "standalone-war-cache").listFiles();
+		if (files != null) {
+			List<File> cacheEntries = new ArrayList<File>();
+			long staleStaging = System.currentTimeMillis() - 60 * 60 * 1000;
+			for (File file : files) {
+				String name = file.getName();
+				if (name.contains(TRASH_MARKER) || name.contains(".stale-") ||
+						(name.contains(".staging-") && file.lastModified() < staleStaging)) {
+					// recent staging dirs may belong to a launch that's extracting now
+					garbage.add(file);
+				}
+				else if (name.matches("[0-9a-f]{40}(\\.war)?")) {
+					cacheEntries.add(file);
+				}
+			}
+
+			Collections.sort(cacheEntries, new Comparator<File>() {
+				public int compare(File f1, File f2) {
+					return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
+				}
+			});
+			int retain = Math.max(1, getIntArg("extractionCacheRetain", 2));
+			for (int i = retain; i < cacheEntries.size(); i++) {
+				File entry = cacheEntries.get(i);
+				FileLock lock = tryLockCacheEntry(entry.getName().substring(0, 40));
+				if (lock == null) {
+					// a running server uses it
+					continue;
+				}
+				try {
+					File trash = moveAside(entry);
+					if (trash != null) {
+						garbage.add(trash);
+					}
+				}
+				finally {
+					release(lock);
+				}
+			}
+		}
+
+		return garbage.isEmpty() ? null : deleteInBackground(garbage);
+	}
+
+	/**
+	 * Takes a shared lock on the cache entry for the key that's held until the JVM
+	 * exits (the OS releases it even if the process is killed), so collectGarbage()
+	 * in other launches sharing the work dir leaves the entry alone while this server
+	 * uses it. The locks are single bytes of one lock file that's never deleted, at
+	 * offsets derived from the keys; two keys that share a byte only means an unused
+	 * entry is kept a little longer.
+	 */
+	protected void lockCacheEntry(String key) throws IOException {
+		try {
+			getCacheLocks().lock(getLockPosition(key), 1, true);
+		}
+		catch (OverlappingFileLockException e) {
+			// this JVM already holds it
+		}
+	}
+
+	/**
+	 * @return the exclusive lock, or null if a server (possibly this one) uses the entry
+	 */
+	protected FileLock tryLockCacheEntry(String key) {
+		try {
+			return getCacheLocks().tryLock(getLockPosition(key), 1, false);
+		}
+		catch (OverlappingFileLockException e) {
+			return null;
+		}
+		catch (IOException e) {
+			System.err.println("Warning, unable to lock the extraction cache entry " + key + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	protected synchronized FileChannel getCacheLocks() throws IOException {
+		if (cacheLocks == null) {
+			File cacheDir = new File(getWorkDir(), "standalone-war-cache");
+			cacheDir.mkdirs();
+			cacheLocks = new RandomAccessFile(new File(cacheDir, ".locks"), "rw").getChannel();
+		}
+		return cacheLocks;
+	}
+
+	protected long getLockPosition(String key) {
+		return key.hashCode() & Integer.MAX_VALUE;
+	}
+
+	protected void release(FileLock lock) {
+		try {
+			lock.release();
+		}
+		catch (IOException ignored) {
+			// the channel is still open, so this isn't expected
+		}
+	}
+
+	/**
+	 * Deletes the files and directories on low priority daemon threads, walking
+	 * directories in parallel, and logs how much space was reclaimed.
+	 */
+	protected Thread deleteInBackground(final List<File> garbage) {
+		int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+		final ForkJoinPool pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			public ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+				thread.setName("standalone-cleanup-" + thread.getPoolIndex());
+				thread.setPriority(Thread.MIN_PRIORITY);
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, null, false);
+
+		Thread thread = new Thread("standalone-cleanup") {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				long[] reclaimed = new long[2];
+				try {
+					for (File file : garbage) {
+						long[] counts = pool.invoke(new DeleteTask(file));
+						reclaimed[0] += counts[0];
+						reclaimed[1] += counts[1];
+					}
+				}
+				finally {
+					pool.shutdown();
+				}
+				System.out.println("Reclaimed " + String.format("%.1f", reclaimed[1] / (1024.0 * 1024.0)) + " MB (" +
+						reclaimed[0] + " files) from " + garbage.size() + " stale entries in the work dir in " +
+						(System.currentTimeMillis() - start) + "ms");
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Deletes a file or directory tree, forking a subtask for each subdirectory.
+	 * The result is the number of files deleted and their total size.
+	 */
+	protected static class DeleteTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1;
+
+		protected final File file;
+
+		public DeleteTask(File file) {
+			this.file = file;
+		}
+
+		@Override
+		protected long[] compute() {
+			long[] counts = new long[2];
+			File[] files = file.listFiles();
+			if (files != null) {
+				List<DeleteTask> subtasks = new ArrayList<DeleteTask>();
+				for (File child : files) {
+					if (child.isDirectory()) {
+						DeleteTask subtask = new DeleteTask(child);
+						subtask.fork();
+						subtasks.add(subtask);
+					}
+					else {
+						long length = child.length();
+						if (child.delete()) {
+							counts[0]++;
+							counts[1] += length;
+						}
+					}
+				}
+				for (DeleteTask subtask : subtasks) {
+					long[] subcounts = subtask.join();
+					counts[0] += subcounts[0];
+					counts[1] += subcounts[1];
+				}
+			}
+			else {
+				long length = file.length();
+				if (file.isFile() && file.delete()) {
+					counts[0]++;
+					counts[1] += length;
+				}
+			}
+			file.delete();
+			return counts;
+		}
+	}
+
+	// from DefaultGroovyMethods.deleteDir()
+	protected boolean deleteDir(final File dir) {
+		if (!dir.exists()) {
+			return true;
+		}
+
+		if (!dir.isDirectory()) {
+			return false;
+		}
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return false;
+		}
+
+		boolean result = true;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				if (!deleteDir(file)) {
+					result = false;
+				}
+			}
+			else {
+				if (!file.delete()) {
+					result = false;
+				}
+			}
+		}
+
+		if (!dir.delete()) {
+			result = false;
+		}
 
 		return result;
 	}
 
 	protected void deleteExplodedOnShutdown(final File exploded) {
+		if (extractionCached) {
+			// reused by the next launch
+			return;
+		}
+
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
@@ -245,6 +1205,551 @@ public abstract class AbstractLauncher {
 		});
 	}
 
+	/**
+	 * Starts the health check server if an 'adminPort' is specified.
+	 */
+	protected void startAdminServer() throws IOException {
+		int adminPort = getIntArg("adminPort", 0);
+		if (adminPort <= 0) {
+			return;
+		}
+
+		String adminHost = getArg("adminHost", getArg("host", "localhost"));
+		adminServer = new AdminServer(adminHost, adminPort, newDaemonThreadFactory("standalone-admin"));
+		try {
+			adminServer.start();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.println("Health checks at http://" + adminHost + ":" + adminPort + "/health/live and /health/ready");
+	}
+
+	protected void setHealthState(AdminServer.State state) {
+		if (adminServer != null) {
+			adminServer.setState(state);
+		}
+	}
+
+	/**
+	 * Reports ready unless startup failed.
+	 */
+	protected void markReady() {
+		if (adminServer != null && adminServer.getState() == AdminServer.State.STARTING) {
+			adminServer.setState(AdminServer.State.READY);
+		}
+	}
+
+	/**
+	 * Starts the access log writer if an 'accessLog' file is specified.
+	 */
+	protected void startAccessLog() throws IOException {
+		String path = getArg("accessLog");
+		if (!hasLength(path)) {
+			return;
+		}
+
+		File file = new File(path).getAbsoluteFile();
+		accessLog = new AsyncAccessLogWriter(file, getIntArg("accessLogBufferSize", 8192),
+				getIntArg("accessLogMaxSize", 100) * 1024L * 1024L,
+				getIntArg("accessLogRotateInterval", 86400) * 1000L);
+		accessLog.start();
+		System.out.println("Writing the access log to " + file);
+	}
+
+	/**
+	 * Writes the remaining access log entries and reports how many were dropped.
+	 */
+	protected void stopAccessLog() {
+		if (accessLog == null) {
+			return;
+		}
+
+		accessLog.stop();
+		if (accessLog.getDropped() > 0) {
+			System.out.println("Access log: " + accessLog.getDropped() + " of " +
+					(accessLog.getWritten() + accessLog.getDropped()) + " records were dropped because the writer fell behind");
+		}
+	}
+
+	/**
+	 * Creates the response cache store if 'responseCache' is true.
+	 */
+	protected void createResponseCache() {
+		if (!getBooleanArg("responseCache", false)) {
+			return;
+		}
+
+		responseCache = new ResponseCache(getIntArg("responseCacheMaxSize", 64) * 1024L * 1024L,
+				getIntArg("responseCacheMaxEntrySize", 1024) * 1024);
+	}
+
+	protected long getResponseCacheCoalesceTimeout() {
+		return getIntArg("responseCacheCoalesceTimeout", 5) * 1000L;
+	}
+
+	protected boolean isMetricsEnabled() {
+		return getBooleanArg("metrics", true) &&
+				(getIntArg("adminPort", 0) > 0 || getIntArg("metricsLogInterval", 0) > 0);
+	}
+
+	/**
+	 * Adds the /metrics endpoint to the admin server and schedules the periodic
+	 * summary if a 'metricsLogInterval' is specified.
+	 */
+	protected void startMetrics() {
+		if (!isMetricsEnabled()) {
+			return;
+		}
+
+		if (adminServer != null) {
+			adminServer.addHandler("/metrics", new HttpHandler() {
+				public void handle(HttpExchange exchange) throws IOException {
+					StringBuilder out = new StringBuilder(4096);
+					writeMetrics(out);
+					AdminServer.send(exchange, 200, "text/plain; version=0.0.4", out.toString());
+				}
+			});
+		}
+
+		int interval = getIntArg("metricsLogInterval", 0);
+		if (interval > 0) {
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+					newDaemonThreadFactory("standalone-metrics-report"));
+			executor.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					logMetricsSummary();
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+
+	protected void writeMetrics(StringBuilder out) {
+		requestLatency.writePrometheus(out, "standalone_request_duration_seconds", "Request latency by status class");
+
+		writeMetricHeader(out, "standalone_requests_active", "gauge", "Requests in flight");
+		writeSample(out, "standalone_requests_active", null, getActiveRequests());
+
+		Runtime runtime = Runtime.getRuntime();
+		writeMetricHeader(out, "standalone_jvm_heap_used_bytes", "gauge", "Used heap");
+		writeSample(out, "standalone_jvm_heap_used_bytes", null, runtime.totalMemory() - runtime.freeMemory());
+		writeMetricHeader(out, "standalone_jvm_heap_max_bytes", "gauge", "Maximum heap");
+		writeSample(out, "standalone_jvm_heap_max_bytes", null, runtime.maxMemory());
+
+		if (accessLog != null) {
+			writeMetricHeader(out, "standalone_access_log_dropped_total", "counter", "Access log records dropped because the writer fell behind");
+			writeSample(out, "standalone_access_log_dropped_total", null, accessLog.getDropped());
+		}
+
+		if (responseCache != null) {
+			String[] names = { "standalone_response_cache_hits_total", "standalone_response_cache_misses_total",
+					"standalone_response_cache_coalesced_total", "standalone_response_cache_evictions_total" };
+			String[] help = { "Responses served from the cache", "Responses produced by the application",
+					"Responses served from the cache after waiting for a concurrent miss", "Responses evicted from the cache" };
+			long[] values = { responseCache.getHits(), responseCache.getMisses(), responseCache.getCoalesced(), responseCache.getEvictions() };
+			for (int i = 0; i < names.length; i++) {
+				writeMetricHeader(out, names[i], "counter", help[i]);
+				writeSample(out, names[i], null, values[i]);
+			}
+			writeMetricHeader(out, "standalone_response_cache_size_bytes", "gauge", "Approximate response cache size");
+			writeSample(out, "standalone_response_cache_size_bytes", null, responseCache.getSize());
+			writeMetricHeader(out, "standalone_response_cache_entries", "gauge", "Cached responses");
+			writeSample(out, "standalone_response_cache_entries", null, responseCache.getEntryCount());
+		}
+
+		writeServerMetrics(out);
+	}
+
+	/**
+	 * Writes the connector, thread pool and cache gauges of the server.
+	 */
+	protected void writeServerMetrics(StringBuilder out) {
+		// subclasses add server metrics
+	}
+
+	protected void writeMetricHeader(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	protected void writeSample(StringBuilder out, String name, String labels, long value) {
+		out.append(name);
+		if (labels != null) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Logs the request counts and latency percentiles since the previous summary,
+	 * followed by the server's own summary.
+	 */
+	protected synchronized void logMetricsSummary() {
+		long now = System.currentTimeMillis();
+		long[] snapshot = requestLatency.snapshot();
+		long[] interval = snapshot.clone();
+		if (lastMetricsSnapshot != null) {
+			for (int i = 0; i < interval.length; i++) {
+				interval[i] -= lastMetricsSnapshot[i];
+			}
+		}
+
+		StringBuilder summary = new StringBuilder("Requests in the last ");
+		summary.append((now - lastMetricsReport) / 1000).append("s:");
+		long total = 0;
+		for (int statusClass = 1; statusClass <= 5; statusClass++) {
+			long count = LatencyHistogram.count(interval, statusClass);
+			total += count;
+			if (count > 0) {
+				summary.append(' ').append(statusClass).append("xx=").append(count);
+			}
+		}
+		if (total == 0) {
+			summary.append(" none");
+		}
+		else {
+			summary.append(", p50 ").append(formatQuantile(interval, 0.5));
+			summary.append(", p99 ").append(formatQuantile(interval, 0.99));
+		}
+		summary.append(", ").append(getActiveRequests()).append(" active");
+
+		if (responseCache != null) {
+			summary.append(", response cache hits/misses since startup ").append(responseCache.getHits() + responseCache.getCoalesced())
+					.append('/').append(responseCache.getMisses());
+		}
+
+		String serverSummary = getServerMetricsSummary();
+		if (hasLength(serverSummary)) {
+			summary.append(", ").append(serverSummary);
+		}
+		System.out.println(summary);
+
+		lastMetricsSnapshot = snapshot;
+		lastMetricsReport = now;
+	}
+
+	protected String formatQuantile(long[] snapshot, double quantile) {
+		long millis = LatencyHistogram.quantileMillis(snapshot, quantile);
+		return millis == Long.MAX_VALUE ? "> 10s" : "<= " + millis + "ms";
+	}
+
+	protected String getServerMetricsSummary() {
+		return null;
+	}
+
+	/**
+	 * Requests each of the comma-delimited 'warmupUrls' (paths relative to the context
+	 * or absolute URLs) 'warmupIterations' times from 'warmupConcurrency' threads,
+	 * so the JIT, caches and lazily initialized beans are warm before the server
+	 * reports ready. Failures are logged but don't stop the server.
+	 */
+	protected void warmUp(String host, int port, String contextPath) {
+		String urls = getArg("warmupUrls", "");
+		if (!hasLength(urls)) {
+			return;
+		}
+
+		List<URL> targets = new ArrayList<URL>();
+		for (String url : urls.split(",")) {
+			url = url.trim();
+			if (!hasLength(url)) {
+				continue;
+			}
+			try {
+				if (url.startsWith("http://") || url.startsWith("https://")) {
+					targets.add(new URL(url));
+				}
+				else {
+					targets.add(new URL("http", host, port, contextPath + (url.startsWith("/") ? url : "/" + url)));
+				}
+			}
+			catch (MalformedURLException e) {
+				System.err.println("Warning, ignoring invalid warm-up URL '" + url + "'");
+			}
+		}
+
+		int iterations = Math.max(1, getIntArg("warmupIterations", 1));
+		int concurrency = Math.max(1, getIntArg("warmupConcurrency", 4));
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, newDaemonThreadFactory("standalone-warmup"));
+		final AtomicInteger failures = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			for (final URL url : targets) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							int status = warmUpRequest(url);
+							if (status >= 400) {
+								failures.incrementAndGet();
+								System.err.println("Warning, warm-up request to " + url + " returned " + status);
+							}
+						}
+						catch (IOException e) {
+							failures.incrementAndGet();
+							System.err.println("Warning, warm-up request to " + url + " failed: " + e.getMessage());
+						}
+					}
+				});
+			}
+		}
+
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(getIntArg("warmupTimeout", 300), TimeUnit.SECONDS)) {
+				System.err.println("Warning, warm-up didn't finish in time, continuing");
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+		}
+
+		System.out.println("Warm-up: " + iterations * targets.size() + " requests to " + targets.size() + " URLs in " +
+				(System.currentTimeMillis() - start) + "ms, " + failures.get() + " failed");
+		markPhase("warm-up");
+	}
+
+	/**
+	 * The user agent identifies as a bot so Tomcat's crawler valve shares one session
+	 * between the warm-up requests.
+	 *
+	 * @return the response status
+	 */
+	protected int warmUpRequest(URL url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(10000);
+		connection.setReadTimeout(60000);
+		connection.setRequestProperty("User-Agent", "Mozilla/5.0 (compatible; grails-standalone-warmup bot)");
+		int status = connection.getResponseCode();
+		// read the whole body so the connection can be reused
+		InputStream inputStream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		if (inputStream != null) {
+			try {
+				byte[] buffer = getBuffer(getBufferSize());
+				while (inputStream.read(buffer) != -1) {
+					// discard
+				}
+			}
+			finally {
+				close(inputStream);
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * Listens on the loopback interface for a line containing the shutdown token
+	 * and shuts down gracefully when it matches. The caller gets 'OK' once the
+	 * drain starts and the drain summary when the server has stopped.
+	 */
+	protected void startShutdownListener(int port) throws IOException {
+		if (port <= 0) {
+			return;
+		}
+
+		final byte[] token;
+		try {
+			token = getShutdownToken(port).getBytes("UTF-8");
+		}
+		catch (IOException e) {
+			System.err.println("Warning, not listening for shutdown requests on port " + port + ": " + e.getMessage());
+			return;
+		}
+
+		final ServerSocket serverSocket;
+		try {
+			serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+		}
+		catch (IOException e) {
+			System.err.println("Warning, unable to listen for shutdown requests on port " + port + ": " + e.getMessage());
+			return;
+		}
+
+		Thread thread = new Thread("standalone-shutdown-listener") {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					Socket socket = null;
+					try {
+						socket = serverSocket.accept();
+						socket.setSoTimeout(5000);
+						byte[] received = readLine(socket.getInputStream(), token.length + 2);
+						OutputStream outputStream = socket.getOutputStream();
+						if (!MessageDigest.isEqual(token, received)) {
+							System.err.println("Warning, ignoring a shutdown request with an invalid token");
+							outputStream.write("DENIED\n".getBytes("UTF-8"));
+							continue;
+						}
+
+						outputStream.write("OK\n".getBytes("UTF-8"));
+						outputStream.flush();
+						outputStream.write((shutdownGracefully() + "\n").getBytes("UTF-8"));
+						close(serverSocket);
+					}
+					catch (IOException e) {
+						// client went away or the socket was closed
+					}
+					finally {
+						close(socket);
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Uses the 'shutdownToken' arg if specified, otherwise generates a random token
+	 * and writes it to a file in the work dir that only the current user can read.
+	 * The work dir is usually the shared temp dir, so the file is created in a new
+	 * directory that's made private before the file exists; if another user already
+	 * has a directory or link with that name it fails rather than using it.
+	 */
+	protected String getShutdownToken(int port) throws IOException {
+		String token = getArg("shutdownToken");
+		if (hasLength(token)) {
+			return token.trim();
+		}
+
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		token = toHex(bytes);
+
+		File dir = new File(getWorkDir(), "standalone-shutdown-" + port);
+		File file = new File(dir, "token");
+		// left over from a previous run
+		file.delete();
+		dir.delete();
+		if (!dir.mkdir()) {
+			throw new IOException("unable to create " + dir + ", remove it or specify 'shutdownToken'");
+		}
+		dir.deleteOnExit();
+		if (!restrictToOwner(dir)) {
+			throw new IOException("unable to make " + dir + " private");
+		}
+		if (!file.createNewFile()) {
+			throw new IOException("unable to create " + file);
+		}
+		file.deleteOnExit();
+		if (!restrictToOwner(file)) {
+			throw new IOException("unable to make " + file + " private");
+		}
+
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(token.getBytes("UTF-8"));
+		}
+		finally {
+			close(outputStream);
+		}
+		System.out.println("Shutdown token written to " + file);
+		return token;
+	}
+
+	/**
+	 * @return false if the permissions couldn't be changed; always true on Windows,
+	 * which can't take away the read permission but has a temp dir per user
+	 */
+	protected boolean restrictToOwner(File file) {
+		if (File.separatorChar == '\\') {
+			return true;
+		}
+		boolean restricted = file.setReadable(false, false) && file.setReadable(true, true) &&
+				file.setWritable(false, false) && file.setWritable(true, true);
+		if (file.isDirectory()) {
+			restricted &= file.setExecutable(false, false) && file.setExecutable(true, true);
+		}
+		return restricted;
+	}
+
+	/**
+	 * @return the bytes up to the first CR or LF, reading at most maxLength bytes
+	 */
+	protected byte[] readLine(InputStream inputStream, int maxLength) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while (line.size() < maxLength && (b = inputStream.read()) != -1 && b != '\n' && b != '\r') {
+			line.write(b);
+		}
+		return line.toByteArray();
+	}
+
+	/**
+	 * Stops accepting connections, waits up to 'shutdownTimeout' seconds for the
+	 * requests in flight to finish, then stops the server. Later callers (e.g. the
+	 * shutdown hook after a triggered shutdown) wait for the first one to finish.
+	 *
+	 * @return a summary of the drain
+	 */
+	protected synchronized String shutdownGracefully() {
+		if (shutdownReport != null) {
+			return shutdownReport;
+		}
+
+		setHealthState(AdminServer.State.DRAINING);
+
+		long start = System.currentTimeMillis();
+		long deadline = start + getIntArg("shutdownTimeout", 30) * 1000L;
+		try {
+			pauseConnectors();
+		}
+		catch (Exception e) {
+			System.err.println("Warning, unable to pause the connectors: " + e.getMessage());
+		}
+
+		int inFlight = getActiveRequests();
+		int remaining = inFlight;
+		while (remaining > 0 && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = getActiveRequests();
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		if (remaining > 0) {
+			shutdownReport = "Shutdown: " + inFlight + " requests in flight, " + remaining +
+					" still running after " + millis + "ms were aborted";
+		}
+		else {
+			shutdownReport = "Shutdown: " + inFlight + " requests in flight, all drained in " + millis + "ms";
+		}
+		System.out.println(shutdownReport);
+
+		try {
+			stopServer();
+		}
+		catch (Exception e) {
+			System.err.println("Warning, error stopping the server: " + e.getMessage());
+		}
+		stopAccessLog();
+		if (adminServer != null) {
+			adminServer.stop();
+		}
+		return shutdownReport;
+	}
+
+	/**
+	 * Stops the connectors accepting new connections; established ones keep working.
+	 */
+	protected void pauseConnectors() throws Exception {
+		// subclasses pause their connectors
+	}
+
+	protected int getActiveRequests() {
+		return 0;
+	}
+
+	protected void stopServer() throws Exception {
+		// subclasses stop their server
+	}
+
 	protected Class<?> getKeyToolClass() throws ClassNotFoundException {
 		try {
 			// Sun JDK 8
@@ -297,6 +1802,79 @@ public abstract class AbstractLauncher {
 		}
 	}
 
+	/**
+	 * Loads the list of jars in WEB-INF/lib that contain TLDs ('tldScan'), web
+	 * fragments or META-INF/resources ('fragmentScan') and any of those or
+	 * initializers or annotations ('pluggabilityScan'), written by build-standalone
+	 * so the server can skip scanning all of the others.
+	 *
+	 * @return the index, or null if the jar doesn't have one or it's disabled
+	 */
+	protected Properties loadJarScanIndex() {
+		if (!getBooleanArg("jarScanIndex", true)) {
+			return null;
+		}
+
+		InputStream inputStream = getResourceAsStream("standalone-jarscan.properties");
+		if (inputStream == null) {
+			return null;
+		}
+
+		Properties index = new Properties();
+		try {
+			index.load(inputStream);
+		}
+		catch (IOException e) {
+			System.err.println("Warning, unable to read the jar scan index: " + e.getMessage());
+			return null;
+		}
+		finally {
+			close(inputStream);
+		}
+		return index;
+	}
+
+	/**
+	 * Loads the static resource digests that build-standalone wrote, keyed by path
+	 * in the war, e.g. '/css/main.css'.
+	 */
+	protected Map<String, String> loadEtagManifest() {
+		if (!getBooleanArg("etagManifest", true)) {
+			return null;
+		}
+
+		InputStream inputStream = getResourceAsStream("standalone-etags.properties");
+		if (inputStream == null) {
+			return null;
+		}
+
+		Properties manifest = new Properties();
+		try {
+			manifest.load(inputStream);
+		}
+		catch (IOException e) {
+			System.err.println("Warning, unable to read the ETag manifest: " + e.getMessage());
+			return null;
+		}
+		finally {
+			close(inputStream);
+		}
+
+		Map<String, String> etags = new HashMap<String, String>(manifest.size() * 4 / 3 + 1);
+		for (String path : manifest.stringPropertyNames()) {
+			etags.put(path, manifest.getProperty(path));
+		}
+		return etags;
+	}
+
+	/**
+	 * Defaults to 'no-cache': the resources aren't necessarily fingerprinted, so clients
+	 * must revalidate, which the ETag makes a cheap 304. A long max-age is opt-in.
+	 */
+	protected String getStaticCacheControl() {
+		return getArg("staticCacheControl", "no-cache");
+	}
+
 	protected void close(Closeable c) {
 		if (c == null) return;
 		try { c.close(); } catch (IOException ignored) {}
@@ -306,6 +1884,218 @@ public abstract class AbstractLauncher {
 		return getClass().getClassLoader().getResourceAsStream(name);
 	}
 
+	/**
+	 * Creates a virtual-thread-per-task executor via reflection since virtual
+	 * threads are only available in Java 21 and later.
+	 *
+	 * @return the executor, or null if this JVM doesn't support virtual threads
+	 */
+	protected ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (NoSuchMethodException e) {
+			// pre-Java 19
+		}
+		catch (Exception e) {
+			// Java 19 and 20 throw UnsupportedOperationException unless preview features are enabled
+		}
+
+		System.err.println("Warning, virtual threads aren't supported by Java " +
+				System.getProperty("java.version") + ", using platform threads");
+		return null;
+	}
+
+	protected ThreadFactory newDaemonThreadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, namePrefix + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	protected void logTransferRate(String action, long bytes, long millis) {
+		double megabytes = bytes / (1024.0 * 1024.0);
+		String rate = millis > 0 ? String.format("%.1f", megabytes * 1000 / millis) : "n/a";
+		System.out.println(action + " " + String.format("%.1f", megabytes) + " MB in " + millis + "ms (" + rate + " MB/s)");
+	}
+
+	/**
+	 * If the 'cds' arg is true, runs the server in a child JVM that maps the
+	 * application class data sharing archive next to the jar (e.g. standalone-0.1.jsa),
+	 * first creating the archive with a training run that starts the server once and
+	 * exits. The archive is recreated when the war, the jar or the JVM changes.
+	 *
+	 * @return the child's exit code, or -1 if the server should run in this JVM
+	 */
+	protected int runWithClassDataSharing(String[] args) throws IOException, InterruptedException {
+		if (!getBooleanArg("cds", false) || getBooleanArg("cdsTrainingRun", false) ||
+				Boolean.getBoolean(CDS_CHILD_PROPERTY)) {
+			return -1;
+		}
+
+		File jar = getLauncherJar();
+		if (jar == null) {
+			System.err.println("Warning, class data sharing requires running from the standalone jar, ignoring");
+			return -1;
+		}
+
+		if (getJavaMajorVersion() < 13) {
+			System.err.println("Warning, dynamic class data sharing archives require Java 13 or later, ignoring");
+			return -1;
+		}
+
+		String path = jar.getAbsolutePath();
+		File archive = new File(getArg("cdsArchive", path.replaceFirst("\\.jar$", "") + ".jsa")).getAbsoluteFile();
+		File sidecar = new File(archive.getPath() + ".properties");
+		String key = getEmbeddedWarDigest() + ':' + jar.length() + ':' + jar.lastModified() + ':' +
+				System.getProperty("java.vm.version");
+
+		if (!archive.isFile() || !key.equals(loadProperties(sidecar).getProperty("key"))) {
+			archive.delete();
+			sidecar.delete();
+
+			System.out.println("Creating class data sharing archive " + archive);
+			long start = System.currentTimeMillis();
+			List<String> training = buildChildCommand(jar, "-XX:ArchiveClassesAtExit=" + archive, args);
+			training.add("cdsTrainingRun=true");
+			int exitCode = new ProcessBuilder(training).inheritIO().start().waitFor();
+
+			if (exitCode == 0 && archive.isFile()) {
+				Properties properties = new Properties();
+				properties.setProperty("key", key);
+				OutputStream outputStream = new FileOutputStream(sidecar);
+				try {
+					properties.store(outputStream, null);
+				}
+				finally {
+					close(outputStream);
+				}
+				System.out.println("Created class data sharing archive in " + (System.currentTimeMillis() - start) + "ms");
+			}
+			else {
+				System.err.println("Warning, the class data sharing training run failed with exit code " +
+						exitCode + ", starting without an archive");
+				archive.delete();
+			}
+		}
+
+		final Process server = new ProcessBuilder(buildChildCommand(jar,
+				archive.isFile() ? "-XX:SharedArchiveFile=" + archive : null, args)).inheritIO().start();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.destroy();
+			}
+		});
+		return server.waitFor();
+	}
+
+	/**
+	 * Called once the server is running; a training run exits here so the JVM
+	 * writes the class data sharing archive.
+	 */
+	protected void exitIfTrainingRun() {
+		if (getBooleanArg("cdsTrainingRun", false)) {
+			System.out.println("Training run complete");
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * Builds the command for the child JVM. It gets this JVM's options except the ones
+	 * that would fail or conflict because this JVM already holds them: debugger and
+	 * other agents, and JMX ports. The main class is the jar's, since it may be a
+	 * subclass of the launcher.
+	 */
+	protected List<String> buildChildCommand(File jar, String cdsOption, String[] args) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		List<String> dropped = new ArrayList<String>();
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (option.startsWith("-XX:SharedArchiveFile") || option.startsWith("-XX:ArchiveClassesAtExit")) {
+				continue;
+			}
+			if (isExclusiveJvmOption(option)) {
+				dropped.add(option);
+				continue;
+			}
+			command.add(option);
+		}
+		if (!dropped.isEmpty()) {
+			System.err.println("Warning, not passing " + dropped + " to the class data sharing child JVM since " +
+					"this JVM already uses them; specify them with the 'cdsChildJvmArgs' arg instead");
+		}
+		String childJvmArgs = getArg("cdsChildJvmArgs");
+		if (hasLength(childJvmArgs)) {
+			command.addAll(Arrays.asList(childJvmArgs.trim().split("\\s+")));
+		}
+		if (cdsOption != null) {
+			command.add(cdsOption);
+		}
+		command.add("-D" + CDS_CHILD_PROPERTY + "=true");
+		command.add("-cp");
+		command.add(jar.getAbsolutePath());
+		command.add(getMainClass(jar));
+		if (args != null) {
+			command.addAll(Arrays.asList(args));
+		}
+		return command;
+	}
+
+	/**
+	 * @return true for options that open a port or attach an agent, which can only be done by one JVM
+	 */
+	protected boolean isExclusiveJvmOption(String option) {
+		return option.startsWith("-agentlib:") || option.startsWith("-agentpath:") || option.startsWith("-javaagent:") ||
+				option.startsWith("-Xrunjdwp") || option.equals("-Xdebug") ||
+				option.startsWith("-Dcom.sun.management.jmxremote") || option.startsWith("-Djava.rmi.server.port");
+	}
+
+	protected String getMainClass(File jar) throws IOException {
+		JarFile jarFile = new JarFile(jar);
+		try {
+			String mainClass = jarFile.getManifest() == null ? null :
+					jarFile.getManifest().getMainAttributes().getValue("Main-Class");
+			return hasLength(mainClass) ? mainClass.trim() : getClass().getName();
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+	protected int getJavaMajorVersion() {
+		String version = System.getProperty("java.specification.version", "1.5");
+		try {
+			return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+		}
+		catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	protected Properties loadProperties(File file) {
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			InputStream inputStream = null;
+			try {
+				inputStream = new FileInputStream(file);
+				properties.load(inputStream);
+			}
+			catch (IOException e) {
+				// treat as empty
+			}
+			finally {
+				close(inputStream);
+			}
+		}
+		return properties;
+	}
+
 	protected void logStartMessage(String host, int port, Integer securePort, String contextPath) {
 		String message = "Server running. Browse to http://" + (host != null ? host : "localhost") + ":" + port + contextPath;
 		if (securePort != null) {
@@ -314,6 +2104,32 @@ public abstract class AbstractLauncher {
 		System.out.println(message);
 	}
 
+	/**
+	 * Records the time since the previous mark (or since the JVM started, for the
+	 * first one) as the duration of the named startup phase.
+	 */
+	protected synchronized void markPhase(String phase) {
+		long now = System.currentTimeMillis();
+		Long previous = startupPhases.get(phase);
+		startupPhases.put(phase, (previous == null ? 0 : previous) + now - lastPhaseMark);
+		lastPhaseMark = now;
+	}
+
+	protected synchronized void logStartupTimings() {
+		if (!getBooleanArg("startupTimings", true)) {
+			return;
+		}
+
+		long total = 0;
+		StringBuilder report = new StringBuilder("Startup timings:");
+		for (Map.Entry<String, Long> entry : startupPhases.entrySet()) {
+			report.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("ms");
+			total += entry.getValue();
+		}
+		report.append("\n  total: ").append(total).append("ms");
+		System.out.println(report);
+	}
+
 	protected static void die(Throwable t, String message) {
 		t.printStackTrace();
 		System.err.println(message);
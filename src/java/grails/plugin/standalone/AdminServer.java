@@ -0,0 +1,118 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP server on a separate port for health probes, using the JDK's
+ * built-in server so it works the same with Tomcat and Jetty and never
+ * touches the application. /health/live fails only if startup failed, and
+ * /health/ready succeeds only between the end of startup (including any
+ * warm-up) and the start of a shutdown.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class AdminServer {
+
+	public enum State { STARTING, READY, DRAINING, FAILED }
+
+	protected volatile State state = State.STARTING;
+	protected final HttpServer httpServer;
+	protected final ExecutorService executor;
+
+	public AdminServer(String host, int port, ThreadFactory threadFactory) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+		executor = Executors.newSingleThreadExecutor(threadFactory);
+		httpServer.setExecutor(executor);
+
+		httpServer.createContext("/health/live", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, state == State.FAILED ? 503 : 200, "text/plain", state + "\n");
+			}
+		});
+		httpServer.createContext("/health/ready", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, state == State.READY ? 200 : 503, "text/plain", state + "\n");
+			}
+		});
+	}
+
+	/**
+	 * The dispatcher thread inherits its daemon status from the thread that starts
+	 * the server, so it's started from a daemon thread to not keep the JVM alive.
+	 */
+	public void start() throws InterruptedException {
+		Thread starter = new Thread("standalone-admin-start") {
+			@Override
+			public void run() {
+				httpServer.start();
+			}
+		};
+		starter.setDaemon(true);
+		starter.start();
+		starter.join();
+	}
+
+	public void stop() {
+		httpServer.stop(0);
+		executor.shutdown();
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public void setState(State state) {
+		this.state = state;
+	}
+
+	/**
+	 * Registers a handler for another admin endpoint.
+	 */
+	public void addHandler(String path, HttpHandler handler) {
+		httpServer.createContext(path, handler);
+	}
+
+	public static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-store");
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream outputStream = exchange.getResponseBody();
+		try {
+			outputStream.write(bytes);
+		}
+		finally {
+			outputStream.close();
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Access log that keeps file I/O off the request threads. A fixed pool of
+ * preallocated entries circulates between a free queue and a pending queue:
+ * request threads take a free entry, copy the request's values into it and
+ * queue it, and a background thread formats and writes pending entries in
+ * batches and returns them to the free queue. If no entry is free the record
+ * is dropped and counted instead of blocking the request.
+ * <p>
+ * Lines are in the combined log format followed by the duration in milliseconds.
+ * The file is rotated when it reaches the maximum size or when the rotation
+ * interval has passed, whichever comes first; rotated files get a timestamp suffix.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class AsyncAccessLogWriter implements Runnable {
+
+	protected static final int BATCH_SIZE = 512;
+	protected static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * The values of one request; reused, so it only holds references to strings
+	 * the request already has.
+	 */
+	public static class Entry {
+		public long timestamp;
+		public long durationMillis;
+		public int status;
+		public long bytes;
+		public String remoteAddr;
+		public String method;
+		public String uri;
+		public String query;
+		public String protocol;
+		public String referer;
+		public String userAgent;
+
+		protected void clear() {
+			remoteAddr = method = uri = query = protocol = referer = userAgent = null;
+		}
+	}
+
+	protected final File file;
+	protected final long maxSize;
+	protected final long rotateIntervalMillis;
+	protected final ArrayBlockingQueue<Entry> free;
+	protected final ArrayBlockingQueue<Entry> pending;
+	protected final AtomicLong dropped = new AtomicLong();
+	protected final AtomicLong written = new AtomicLong();
+	protected final List<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+	protected final StringBuilder line = new StringBuilder(512);
+	protected char[] chars = new char[512];
+	protected final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+	protected final SimpleDateFormat rotationFormat = new SimpleDateFormat("yyyy-MM-dd.HHmmss", Locale.US);
+	protected final Date date = new Date();
+	protected long formattedSecond = -1;
+	protected String formattedDate;
+
+	protected Writer writer;
+	protected long fileSize;
+	protected long fileOpened;
+	protected boolean unflushed;
+	protected boolean failing;
+	protected volatile boolean running = true;
+	protected Thread thread;
+
+	/**
+	 * @param file the log file; it's appended to if it exists
+	 * @param capacity the number of entries that can be waiting to be written
+	 * @param maxSize the size in bytes to rotate at, or 0 to not rotate by size
+	 * @param rotateIntervalMillis the age to rotate at, or 0 to not rotate by time
+	 */
+	public AsyncAccessLogWriter(File file, int capacity, long maxSize, long rotateIntervalMillis) {
+		this.file = file;
+		this.maxSize = maxSize;
+		this.rotateIntervalMillis = rotateIntervalMillis;
+		free = new ArrayBlockingQueue<Entry>(capacity);
+		pending = new ArrayBlockingQueue<Entry>(capacity);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new Entry());
+		}
+	}
+
+	public void start() throws IOException {
+		open();
+		thread = new Thread(this, "standalone-access-log");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		thread.start();
+	}
+
+	/**
+	 * Writes the entries that are still pending and closes the file.
+	 */
+	public void stop() {
+		running = false;
+		if (thread == null) {
+			return;
+		}
+		thread.interrupt();
+		try {
+			thread.join(5000);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return a free entry to fill and pass to {@link #publish(Entry)}, or null if
+	 * the writer has fallen behind and the record must be dropped
+	 */
+	public Entry acquire() {
+		Entry entry = free.poll();
+		if (entry == null) {
+			dropped.incrementAndGet();
+		}
+		return entry;
+	}
+
+	public void publish(Entry entry) {
+		// never full, there are only as many entries as it can hold
+		pending.offer(entry);
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void run() {
+		while (running || !pending.isEmpty()) {
+			try {
+				Entry first = running ? pending.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) : pending.poll();
+				if (first != null) {
+					batch.add(first);
+					pending.drainTo(batch, BATCH_SIZE - 1);
+					try {
+						write(batch);
+					}
+					finally {
+						release(batch);
+					}
+				}
+				if (first == null || pending.isEmpty()) {
+					flush();
+				}
+				rotateIfNecessary(System.currentTimeMillis());
+			}
+			catch (InterruptedException e) {
+				// stopping; write what's left
+			}
+			catch (IOException e) {
+				if (!failing) {
+					System.err.println("Warning, unable to write the access log " + file + ": " + e.getMessage());
+					failing = true;
+				}
+				closeQuietly();
+			}
+		}
+
+		try {
+			if (writer != null) {
+				flush();
+				writer.close();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Warning, unable to close the access log " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the entries; if it fails the ones that weren't written count as dropped.
+	 */
+	protected void write(List<Entry> entries) throws IOException {
+		int count = 0;
+		try {
+			if (writer == null) {
+				// the file couldn't be written or reopened last time
+				open();
+			}
+			for (; count < entries.size(); count++) {
+				line.setLength(0);
+				format(entries.get(count), line);
+
+				int length = line.length();
+				if (chars.length < length) {
+					chars = new char[length * 2];
+				}
+				line.getChars(0, length, chars, 0);
+				writer.write(chars, 0, length);
+				fileSize += length;
+				unflushed = true;
+			}
+			if (failing) {
+				System.out.println("Writing the access log " + file + " again");
+				failing = false;
+			}
+		}
+		finally {
+			written.addAndGet(count);
+			dropped.addAndGet(entries.size() - count);
+		}
+	}
+
+	/**
+	 * Returns the entries to the free queue and empties the batch, whether or not
+	 * they were written, so each entry is only ever in one place.
+	 */
+	protected void release(List<Entry> entries) {
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			entry.clear();
+			free.offer(entry);
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Formats an entry in the combined log format plus the duration, e.g.
+	 * <pre>127.0.0.1 - - [05/Mar/2016:14:02:11 +0000] "GET /app/book?id=3 HTTP/1.1" 200 5120 "-" "curl/7.47.0" 12</pre>
+	 */
+	protected void format(Entry entry, StringBuilder out) {
+		long second = entry.timestamp / 1000;
+		if (second != formattedSecond) {
+			date.setTime(second * 1000);
+			formattedDate = dateFormat.format(date);
+			formattedSecond = second;
+		}
+
+		appendValue(out, entry.remoteAddr).append(" - - [").append(formattedDate).append("] \"");
+		appendValue(out, entry.method).append(' ');
+		appendEscaped(out, entry.uri);
+		if (entry.query != null) {
+			out.append('?');
+			appendEscaped(out, entry.query);
+		}
+		out.append(' ');
+		appendValue(out, entry.protocol).append("\" ").append(entry.status).append(' ');
+		if (entry.bytes > 0) {
+			out.append(entry.bytes);
+		}
+		else {
+			out.append('-');
+		}
+		out.append(" \"");
+		appendEscaped(out, entry.referer);
+		out.append("\" \"");
+		appendEscaped(out, entry.userAgent);
+		out.append("\" ").append(entry.durationMillis).append('\n');
+	}
+
+	protected StringBuilder appendValue(StringBuilder out, String value) {
+		return out.append(value == null || value.length() == 0 ? "-" : value);
+	}
+
+	/**
+	 * Escapes quotes, backslashes and control characters so a header can't break
+	 * a line or a field.
+	 */
+	protected void appendEscaped(StringBuilder out, String value) {
+		if (value == null || value.length() == 0) {
+			out.append('-');
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			}
+			else if (c < 0x20 || c == 0x7f) {
+				out.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			}
+			else {
+				out.append(c);
+			}
+		}
+	}
+
+	protected void flush() throws IOException {
+		if (unflushed && writer != null) {
+			writer.flush();
+			unflushed = false;
+		}
+	}
+
+	protected void rotateIfNecessary(long now) throws IOException {
+		if (writer == null) {
+			// a write failed; reopening resets the size to what actually reached the file
+			open();
+			return;
+		}
+
+		boolean tooBig = maxSize > 0 && fileSize >= maxSize;
+		boolean tooOld = rotateIntervalMillis > 0 && now - fileOpened >= rotateIntervalMillis && fileSize > 0;
+		if (!tooBig && !tooOld) {
+			return;
+		}
+
+		flush();
+		writer.close();
+		writer = null;
+		File rotated = new File(file.getPath() + '.' + rotationFormat.format(new Date(now)));
+		for (int i = 1; rotated.exists(); i++) {
+			rotated = new File(file.getPath() + '.' + rotationFormat.format(new Date(now)) + '-' + i);
+		}
+		if (!file.renameTo(rotated)) {
+			System.err.println("Warning, unable to rotate the access log " + file + " to " + rotated);
+		}
+		open();
+	}
+
+	/**
+	 * Drops the writer after an error so the next batch reopens the file.
+	 */
+	protected void closeQuietly() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.close();
+		}
+		catch (IOException ignored) {
+			// already failing
+		}
+		writer = null;
+		unflushed = false;
+	}
+
+	protected void open() throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		fileSize = file.length();
+		fileOpened = System.currentTimeMillis();
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"), 64 * 1024);
+	}
+}
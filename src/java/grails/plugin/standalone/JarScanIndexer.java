@@ -0,0 +1,209 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the jars in a war's WEB-INF/lib that the server actually needs to scan at
+ * startup: those with TLDs, and those with web fragments, ServletContainerInitializers,
+ * META-INF/resources, or classes that use the Servlet 3 or WebSocket annotations.
+ * Used by build-standalone (it isn't part of the launcher) to write the index the
+ * launchers use to skip scanning every other jar. Jars with web fragments or
+ * META-INF/resources are also listed separately, for servers like Jetty 7 that
+ * don't scan for initializers or annotations.
+ * <p>
+ * An initializer in the war that declares @HandlesTypes is passed the classes that
+ * extend, implement or are annotated with the handled types, and those can be in
+ * any jar. Finding them would mean resolving every class hierarchy in the war, so
+ * in that case no pluggability list is written and the server scans every jar for
+ * annotations and initializers as it would without the index.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class JarScanIndexer {
+
+	protected static final String LIB = "WEB-INF/lib/";
+	protected static final String CLASSES = "WEB-INF/classes/";
+	protected static final String INITIALIZER_SERVICES = "META-INF/services/javax.servlet.ServletContainerInitializer";
+
+	protected final List<String> tldJars = new ArrayList<String>();
+	protected final List<String> pluggabilityJars = new ArrayList<String>();
+	protected final List<String> fragmentJars = new ArrayList<String>();
+	protected final Set<String> initializers = new LinkedHashSet<String>();
+	protected final Set<String> handlesTypesClasses = new HashSet<String>();
+	protected int jarCount;
+
+	protected final byte[] buffer = new byte[8192];
+	protected final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	/**
+	 * @return the 'tldScan', 'fragmentScan' and 'pluggabilityScan' jar name lists;
+	 * 'pluggabilityScan' is left out if an initializer declares @HandlesTypes
+	 */
+	public Properties index(File war) throws IOException {
+		ZipFile zip = new ZipFile(war);
+		try {
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+				ZipEntry entry = e.nextElement();
+				String name = entry.getName();
+				if (name.startsWith(CLASSES)) {
+					String path = name.substring(CLASSES.length());
+					if (path.equals(INITIALIZER_SERVICES) || path.endsWith(".class")) {
+						scanEntry(path, zip.getInputStream(entry));
+					}
+				}
+				else if (name.startsWith(LIB) && name.endsWith(".jar") && name.indexOf('/', LIB.length()) == -1) {
+					scanJar(name.substring(LIB.length()), zip.getInputStream(entry));
+				}
+			}
+		}
+		finally {
+			zip.close();
+		}
+
+		Properties index = new Properties();
+		index.setProperty("tldScan", join(tldJars));
+		index.setProperty("fragmentScan", join(fragmentJars));
+		if (getInitializersWithHandlesTypes().isEmpty()) {
+			index.setProperty("pluggabilityScan", join(pluggabilityJars));
+		}
+		return index;
+	}
+
+	protected void scanJar(String jarName, InputStream inputStream) throws IOException {
+		jarCount++;
+		boolean hasTlds = false;
+		boolean hasFragment = false;
+		boolean pluggable = false;
+
+		ZipInputStream jarStream = new ZipInputStream(inputStream);
+		try {
+			for (ZipEntry entry; (entry = jarStream.getNextEntry()) != null; ) {
+				String name = entry.getName();
+				if (name.startsWith("META-INF/") && name.endsWith(".tld")) {
+					hasTlds = true;
+				}
+				else if (name.equals("META-INF/web-fragment.xml") || name.startsWith("META-INF/resources/")) {
+					hasFragment = true;
+				}
+				else if (name.equals(INITIALIZER_SERVICES) || name.endsWith(".class")) {
+					pluggable |= scanEntry(name, jarStream);
+				}
+			}
+		}
+		finally {
+			jarStream.close();
+		}
+
+		if (hasTlds) {
+			tldJars.add(jarName);
+		}
+		if (hasFragment) {
+			fragmentJars.add(jarName);
+		}
+		if (pluggable || hasFragment) {
+			pluggabilityJars.add(jarName);
+		}
+	}
+
+	/**
+	 * Records the initializers listed in a services file and the classes that declare
+	 * @HandlesTypes. Annotations and class references are found by looking for the
+	 * type names in the class file's constant pool, which is much faster than parsing it.
+	 *
+	 * @return whether the entry makes its jar need a pluggability scan
+	 */
+	protected boolean scanEntry(String name, InputStream inputStream) throws IOException {
+		String content = read(inputStream);
+		if (name.equals(INITIALIZER_SERVICES)) {
+			for (String line : content.split("[\r\n]+")) {
+				int comment = line.indexOf('#');
+				line = (comment == -1 ? line : line.substring(0, comment)).trim();
+				if (line.length() > 0) {
+					initializers.add(line);
+				}
+			}
+			return true;
+		}
+
+		if (content.contains("javax/servlet/annotation/HandlesTypes")) {
+			handlesTypesClasses.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+		}
+		// Tomcat's WebSocket initializer looks for endpoint classes in the scanned jars
+		return content.contains("javax/servlet/annotation/Web") || content.contains("javax/websocket/");
+	}
+
+	protected String read(InputStream inputStream) throws IOException {
+		bytes.reset();
+		for (int length; (length = inputStream.read(buffer)) != -1; ) {
+			bytes.write(buffer, 0, length);
+		}
+		return bytes.toString("ISO-8859-1");
+	}
+
+	protected String join(List<String> names) {
+		StringBuilder joined = new StringBuilder();
+		for (String name : names) {
+			if (joined.length() > 0) {
+				joined.append(',');
+			}
+			joined.append(name);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * @return the initializers in the war that declare @HandlesTypes
+	 */
+	public List<String> getInitializersWithHandlesTypes() {
+		List<String> names = new ArrayList<String>();
+		for (String initializer : initializers) {
+			if (handlesTypesClasses.contains(initializer)) {
+				names.add(initializer);
+			}
+		}
+		return names;
+	}
+
+	public int getJarCount() {
+		return jarCount;
+	}
+
+	public List<String> getTldJars() {
+		return tldJars;
+	}
+
+	public List<String> getPluggabilityJars() {
+		return pluggabilityJars;
+	}
+
+	public List<String> getFragmentJars() {
+		return fragmentJars;
+	}
+}
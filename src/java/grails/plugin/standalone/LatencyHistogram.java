@@ -0,0 +1,127 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request latency histogram with fixed buckets for each status class (1xx-5xx).
+ * Recording only increments preallocated counters, so it's cheap enough to run
+ * on every request and never allocates.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class LatencyHistogram {
+
+	/** Bucket upper bounds in milliseconds; there's an implicit +Inf bucket after the last. */
+	protected static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+	protected static final int BUCKETS = BOUNDS_MILLIS.length + 1;
+	protected static final int STATUS_CLASSES = 5;
+
+	protected static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+	static {
+		for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+			BOUNDS_NANOS[i] = BOUNDS_MILLIS[i] * 1000000L;
+		}
+	}
+
+	protected final AtomicLongArray counts = new AtomicLongArray(STATUS_CLASSES * BUCKETS);
+	protected final AtomicLongArray sumNanos = new AtomicLongArray(STATUS_CLASSES);
+
+	public void record(int status, long nanos) {
+		int statusClass = Math.min(Math.max(status / 100, 1), STATUS_CLASSES) - 1;
+		int bucket = 0;
+		while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+			bucket++;
+		}
+		counts.incrementAndGet(statusClass * BUCKETS + bucket);
+		sumNanos.addAndGet(statusClass, nanos);
+	}
+
+	/**
+	 * @return a copy of the per-bucket counts, indexed by status class * BUCKETS + bucket
+	 */
+	public long[] snapshot() {
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the request count of a status class (1-5) in a snapshot
+	 */
+	public static long count(long[] snapshot, int statusClass) {
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			count += snapshot[(statusClass - 1) * BUCKETS + bucket];
+		}
+		return count;
+	}
+
+	/**
+	 * Estimates a quantile across all status classes as the upper bound of the
+	 * bucket it falls in.
+	 *
+	 * @return the bound in milliseconds, Long.MAX_VALUE if it's past the last
+	 * bound, or -1 if there are no requests
+	 */
+	public static long quantileMillis(long[] snapshot, double quantile) {
+		long total = 0;
+		for (long count : snapshot) {
+			total += count;
+		}
+		if (total == 0) {
+			return -1;
+		}
+
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			for (int statusClass = 0; statusClass < STATUS_CLASSES; statusClass++) {
+				seen += snapshot[statusClass * BUCKETS + bucket];
+			}
+			if (seen >= rank) {
+				return bucket < BOUNDS_MILLIS.length ? BOUNDS_MILLIS[bucket] : Long.MAX_VALUE;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Writes the histogram in the Prometheus text format, with cumulative
+	 * buckets labelled by status class.
+	 */
+	public void writePrometheus(StringBuilder out, String name, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		long[] snapshot = snapshot();
+		for (int statusClass = 0; statusClass < STATUS_CLASSES; statusClass++) {
+			String status = (statusClass + 1) + "xx";
+			long cumulative = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				cumulative += snapshot[statusClass * BUCKETS + bucket];
+				String le = bucket < BOUNDS_MILLIS.length ? String.valueOf(BOUNDS_MILLIS[bucket] / 1000.0) : "+Inf";
+				out.append(name).append("_bucket{status=\"").append(status).append("\",le=\"").append(le)
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			out.append(name).append("_sum{status=\"").append(status).append("\"} ")
+					.append(sumNanos.get(statusClass) / 1.0e9).append('\n');
+			out.append(name).append("_count{status=\"").append(status).append("\"} ").append(cumulative).append('\n');
+		}
+	}
+}
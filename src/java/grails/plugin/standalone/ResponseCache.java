@@ -0,0 +1,372 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-bounded LRU store for the response cache filter. It doesn't depend on
+ * the servlet API, so the launchers can report its counters without knowing
+ * which container or servlet API version is in use.
+ * <p>
+ * Responses are found in two steps: the URL key maps to the request header names
+ * the last response for it varied by, and the URL key plus those headers' values
+ * map to the response. Both are kept in LRU order and count towards the size
+ * limit; a URL's record is only evicted once none of its responses are cached.
+ * Concurrent misses for the same key of a URL whose last response was cacheable
+ * are coalesced: the first request produces the response and the others wait for
+ * it. URLs whose last response wasn't cacheable are recorded as pass URLs, whose
+ * requests all go straight to the application since there'd be nothing to wait for.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class ResponseCache {
+
+	protected static final String[] NO_VARY = new String[0];
+
+	/**
+	 * A cached response; immutable once stored.
+	 */
+	public static class Entry {
+		public final int status;
+		public final String contentType;
+		public final List<String[]> headers;
+		public final byte[] body;
+		public final long created;
+		public final long expires;
+
+		public Entry(int status, String contentType, List<String[]> headers, byte[] body, long created, long expires) {
+			this.status = status;
+			this.contentType = contentType;
+			this.headers = headers;
+			this.body = body;
+			this.created = created;
+			this.expires = expires;
+		}
+
+		/**
+		 * Approximate heap size, used for the memory bound.
+		 */
+		protected long weight(String key) {
+			long weight = 64 + body.length + key.length() * 2;
+			for (String[] header : headers) {
+				weight += 32 + (header[0].length() + header[1].length()) * 2;
+			}
+			return weight;
+		}
+	}
+
+	/**
+	 * What's known about a URL; guarded by the entries lock.
+	 */
+	protected static class Url {
+		protected String[] vary;
+		protected int variants;
+		protected boolean pass;
+
+		protected long weight(String urlKey) {
+			long weight = 48 + urlKey.length() * 2;
+			for (String name : vary) {
+				weight += 16 + name.length() * 2;
+			}
+			return weight;
+		}
+	}
+
+	protected final long maxSize;
+	protected final int maxEntrySize;
+	protected final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+	// insertion ordered, and moved to the end when used, so removing a variant doesn't reorder it
+	protected final Map<String, Url> urls = new LinkedHashMap<String, Url>();
+	protected final ConcurrentHashMap<String, CountDownLatch> misses = new ConcurrentHashMap<String, CountDownLatch>();
+	protected long size;
+
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong missCount = new AtomicLong();
+	protected final AtomicLong coalesced = new AtomicLong();
+	protected final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize the approximate maximum memory use in bytes
+	 * @param maxEntrySize the size in bytes of the largest response body to cache
+	 */
+	public ResponseCache(long maxSize, int maxEntrySize) {
+		this.maxSize = maxSize;
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	/**
+	 * @return the request header names the URL's response varies by, lower case
+	 */
+	public String[] getVary(String urlKey) {
+		synchronized (entries) {
+			Url url = touch(urlKey);
+			return url == null ? NO_VARY : url.vary;
+		}
+	}
+
+	/**
+	 * @param urlKey the URL key
+	 * @param varyValues the request's values of the headers from {@link #getVary(String)}, nulls allowed
+	 * @return the key of the response variant
+	 */
+	public String variantKey(String urlKey, String[] varyValues) {
+		if (varyValues.length == 0) {
+			return urlKey;
+		}
+
+		StringBuilder key = new StringBuilder(urlKey);
+		for (String value : varyValues) {
+			key.append('\n').append(value == null ? "" : value);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return the fresh response, or null
+	 */
+	public Entry get(String key, long now) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expires <= now) {
+				entries.remove(key);
+				removed(key, entry);
+				entry = null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Stores a response, evicting the least recently used ones beyond the size limit.
+	 */
+	public void put(String urlKey, String[] vary, String key, Entry entry) {
+		if (entry.body.length > maxEntrySize) {
+			pass(urlKey);
+			return;
+		}
+
+		long weight = entry.weight(key);
+		synchronized (entries) {
+			Url url = touch(urlKey);
+			if (url == null) {
+				url = new Url();
+				url.vary = vary;
+				urls.put(urlKey, url);
+				size += url.weight(urlKey);
+			}
+			else if (!Arrays.equals(url.vary, vary)) {
+				size -= url.weight(urlKey);
+				url.vary = vary;
+				size += url.weight(urlKey);
+			}
+
+			url.pass = false;
+			Entry previous = entries.put(key, entry);
+			if (previous == null) {
+				url.variants++;
+			}
+			else {
+				size -= previous.weight(key);
+			}
+			size += weight;
+
+			evict();
+		}
+	}
+
+	/**
+	 * Records that the URL's response couldn't be cached, so that concurrent requests
+	 * for it aren't made to wait for each other; cleared when a response is stored.
+	 */
+	public void pass(String urlKey) {
+		synchronized (entries) {
+			Url url = touch(urlKey);
+			if (url == null) {
+				url = new Url();
+				url.vary = NO_VARY;
+				urls.put(urlKey, url);
+				size += url.weight(urlKey);
+			}
+			url.pass = true;
+			evict();
+		}
+	}
+
+	/**
+	 * @return whether the URL's last response was stored, so a concurrent miss for
+	 * it is worth waiting for
+	 */
+	public boolean isCacheable(String urlKey) {
+		synchronized (entries) {
+			Url url = urls.get(urlKey);
+			return url != null && !url.pass;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used URL records that have no cached responses, and
+	 * otherwise the least recently used responses, until the size is within the limit.
+	 */
+	protected void evict() {
+		while (size > maxSize && !urls.isEmpty()) {
+			Map.Entry<String, Url> eldestUrl = urls.entrySet().iterator().next();
+			if (eldestUrl.getValue().variants == 0) {
+				urls.remove(eldestUrl.getKey());
+				size -= eldestUrl.getValue().weight(eldestUrl.getKey());
+				continue;
+			}
+
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			Map.Entry<String, Entry> eldest = iterator.next();
+			iterator.remove();
+			removed(eldest.getKey(), eldest.getValue());
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Updates the size and the URL's response count after a response is removed.
+	 */
+	protected void removed(String key, Entry entry) {
+		size -= entry.weight(key);
+		// see variantKey(); request URLs can't contain line breaks
+		int end = key.indexOf('\n');
+		Url url = urls.get(end == -1 ? key : key.substring(0, end));
+		if (url != null) {
+			url.variants--;
+		}
+	}
+
+	/**
+	 * @return the URL's record, moved to the most recently used end, or null
+	 */
+	protected Url touch(String urlKey) {
+		Url url = urls.remove(urlKey);
+		if (url != null) {
+			urls.put(urlKey, url);
+		}
+		return url;
+	}
+
+	/**
+	 * Registers the caller as the producer of the response for a key that missed.
+	 *
+	 * @return null if the caller must produce the response and then call
+	 * {@link #finishMiss(String)}, otherwise the latch to wait on for the request
+	 * that already is
+	 */
+	public CountDownLatch joinMiss(String key) {
+		return misses.putIfAbsent(key, new CountDownLatch(1));
+	}
+
+	public void finishMiss(String key) {
+		CountDownLatch latch = misses.remove(key);
+		if (latch != null) {
+			latch.countDown();
+		}
+	}
+
+	public int getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	public void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	public void recordMiss() {
+		missCount.incrementAndGet();
+	}
+
+	public void recordCoalesced() {
+		coalesced.incrementAndGet();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return missCount.get();
+	}
+
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getSize() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+	public int getEntryCount() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Calculates how long a response may be cached from its Cache-Control header;
+	 * s-maxage is preferred to max-age since this is a shared cache.
+	 *
+	 * @return the number of seconds, or -1 if it must not be cached
+	 */
+	public static long getMaxAge(String cacheControl) {
+		if (cacheControl == null) {
+			return -1;
+		}
+
+		long maxAge = -1;
+		long sharedMaxAge = -1;
+		for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+			directive = directive.trim();
+			if (directive.equals("no-store") || directive.equals("private") || directive.startsWith("private=") ||
+					directive.equals("no-cache") || directive.startsWith("no-cache=")) {
+				return -1;
+			}
+			if (directive.startsWith("max-age=")) {
+				maxAge = parseSeconds(directive.substring(8));
+			}
+			else if (directive.startsWith("s-maxage=")) {
+				sharedMaxAge = parseSeconds(directive.substring(9));
+			}
+		}
+		long seconds = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+		return seconds > 0 ? seconds : -1;
+	}
+
+	protected static long parseSeconds(String value) {
+		try {
+			return Long.parseLong(value.replace("\"", "").trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
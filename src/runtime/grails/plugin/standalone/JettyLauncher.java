@@ -18,13 +18,42 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.plus.webapp.EnvConfiguration;
 import org.eclipse.jetty.plus.webapp.PlusConfiguration;
+import org.eclipse.jetty.server.AbstractConnector;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.DispatcherType;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.RequestLog;
+import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.bio.SocketConnector;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.server.ssl.SslConnector;
+import org.eclipse.jetty.server.ssl.SslSelectChannelConnector;
 import org.eclipse.jetty.server.ssl.SslSocketConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.webapp.Configuration;
 import org.eclipse.jetty.webapp.FragmentConfiguration;
 import org.eclipse.jetty.webapp.JettyWebXmlConfiguration;
@@ -44,16 +73,31 @@ import org.eclipse.jetty.webapp.WebXmlConfiguration;
  */
 public class JettyLauncher extends AbstractLauncher {
 
+	protected Server server;
+	protected WebAppContext context;
+	protected StatisticsHandler statisticsHandler;
+
 	/**
 	 * Start the server.
 	 *
 	 * @param args optional; 1st is context path, 2nd is host, 3rd is http port,
 	 * 4th is SSL port, 5th is SSL keystore path, 6th is keystore password
 	 * @throws IOException
+	 * @throws InterruptedException
 	 */
-	public static void main(String[] args) throws IOException {
+	public static void main(String[] args) throws IOException, InterruptedException {
 		final JettyLauncher launcher = new JettyLauncher(args);
+		int exitCode = launcher.runWithClassDataSharing(args);
+		if (exitCode != -1) {
+			System.exit(exitCode);
+		}
+
+		if (!launcher.getBooleanArg("explodeWar", true)) {
+			System.err.println("Warning, explodeWar=false is only supported with Tomcat, exploding the war");
+		}
+
 		final File exploded = launcher.extractWar();
+		launcher.markPhase("war extraction");
 		launcher.deleteExplodedOnShutdown(exploded);
 		launcher.start(exploded);
 	}
@@ -91,7 +135,14 @@ public class JettyLauncher extends AbstractLauncher {
 			keystorePassword = "123456";
 		}
 
-		Server server = configureJetty(contextPath, exploded, host, port, httpsPort, keystoreFile, usingUserKeystore, keystorePassword);
+		startAccessLog();
+		server = configureJetty(contextPath, exploded, host, port, httpsPort, keystoreFile, usingUserKeystore, keystorePassword);
+		markPhase("configuration");
+
+		startShutdownListener(getIntArg("shutdownPort", port + 1));
+		startAdminServer();
+		startMetrics();
+		addShutdownHook();
 
 		startJetty(server, host, port, contextPath, httpsPort > 0 ? httpsPort : null);
 	}
@@ -120,7 +171,17 @@ public class JettyLauncher extends AbstractLauncher {
 	protected void startJetty(Server server, String host, int port, String contextPath, Integer securePort) {
 		try {
 			server.start();
+			markPhase("connector start");
+			if (!context.isAvailable()) {
+				setHealthState(AdminServer.State.FAILED);
+			}
+			else {
+				warmUp(host, port, contextPath);
+				markReady();
+			}
 			logStartMessage(host, port, securePort, contextPath);
+			logStartupTimings();
+			exitIfTrainingRun();
 //			System.in.read();
 //			server.stop();
 //			server.join();
@@ -135,7 +196,7 @@ public class JettyLauncher extends AbstractLauncher {
 		// Jetty requires a 'defaults descriptor' on the filesystem
 		File webDefaults = extractWebdefaultXml();
 
-		WebAppContext context = new WebAppContext(webappRoot, contextPath);
+		context = new WebAppContext(webappRoot, contextPath);
 
 		setSystemProperty("java.naming.factory.url.pkgs", "org.eclipse.jetty.jndi");
 		setSystemProperty("java.naming.factory.initial", "org.eclipse.jetty.jndi.InitialContextFactory");
@@ -150,13 +211,103 @@ public class JettyLauncher extends AbstractLauncher {
 		}
 
 		context.setConfigurations(configurations);
+		addStartupTimingListener(context);
 		context.setDefaultsDescriptor(webDefaults.getPath());
 
+		Properties jarScanIndex = loadJarScanIndex();
+		if (jarScanIndex != null && jarScanIndex.getProperty("fragmentScan") != null) {
+			// Jetty 7 doesn't scan for initializers or annotations, so only the jars that
+			// build-standalone found TLDs, web fragments or META-INF/resources in are needed
+			context.setAttribute(WebInfConfiguration.WEBINF_JAR_PATTERN, createJarPattern(
+					jarScanIndex.getProperty("tldScan", "") + "," + jarScanIndex.getProperty("fragmentScan")));
+		}
+
+		String fileMappedBuffer = getArg("fileMappedBuffer");
+		if (hasLength(fileMappedBuffer)) {
+			// overrides the default servlet's init parameter in webdefault.xml
+			context.setInitParameter("org.eclipse.jetty.servlet.Default.useFileMappedBuffer", fileMappedBuffer);
+		}
+		int maxCachedFileSize = getIntArg("maxCachedFileSize", -1);
+		if (maxCachedFileSize >= 0) {
+			context.setInitParameter("org.eclipse.jetty.servlet.Default.maxCachedFileSize", String.valueOf(maxCachedFileSize * 1024L));
+		}
+
+		Map<String, String> etags = loadEtagManifest();
+		if (etags != null) {
+			// webdefault.xml enables serving gzipped siblings
+			context.addFilter(new FilterHolder(new StaticEtagFilter(etags, getStaticCacheControl(), new String[] { "gzip" }) {
+				@Override
+				protected String selectEncoding(HttpServletRequest request, String path) {
+					// Jetty's default servlet sends the .gz sibling whenever Accept-Encoding mentions gzip
+					String acceptEncoding = request.getHeader("Accept-Encoding");
+					return acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1 &&
+							etags.containsKey(path + ".gz") ? "gzip" : null;
+				}
+			}), "/*", EnumSet.of(DispatcherType.REQUEST));
+		}
+
+		createResponseCache();
+		if (responseCache != null) {
+			addResponseCacheFilter(context);
+		}
+
 		System.setProperty("TomcatKillSwitch.active", "true"); // workaround to prevent server exiting
 
 		return context;
 	}
 
+	/**
+	 * Adds the response cache filter before the application's filters. The filter
+	 * is only compiled when the servlet 3.1 API is available, so it's loaded by name.
+	 */
+	protected void addResponseCacheFilter(WebAppContext context) {
+		try {
+			Class<?> filterClass = Class.forName("grails.plugin.standalone.ResponseCacheFilter");
+			Filter filter = (Filter) filterClass.getConstructor(ResponseCache.class, long.class, boolean.class)
+					.newInstance(responseCache, getResponseCacheCoalesceTimeout(), false);
+			context.addFilter(new FilterHolder(filter), "/*", EnumSet.of(DispatcherType.REQUEST));
+		}
+		catch (ClassNotFoundException e) {
+			System.err.println("Warning, the response cache requires the servlet 3.1 API with Jetty and is disabled");
+			responseCache = null;
+		}
+		catch (Exception e) {
+			System.err.println("Warning, unable to add the response cache filter: " + e.getMessage());
+			responseCache = null;
+		}
+	}
+
+	/**
+	 * Jetty starts the handlers before the connectors; Spring and Grails bootstrap
+	 * while the context is starting.
+	 */
+	protected void addStartupTimingListener(WebAppContext context) {
+		context.addLifeCycleListener(new AbstractLifeCycleListener() {
+			@Override
+			public void lifeCycleStarting(LifeCycle event) {
+				markPhase("server init");
+			}
+
+			@Override
+			public void lifeCycleStarted(LifeCycle event) {
+				markPhase("context configuration and application bootstrap");
+			}
+		});
+	}
+
+	/**
+	 * @return a regex matching the URIs of the named jars, or nothing if there are none
+	 */
+	protected String createJarPattern(String commaDelimitedNames) {
+		StringBuilder pattern = new StringBuilder();
+		for (String name : commaDelimitedNames.split(",")) {
+			if (hasLength(name)) {
+				pattern.append(pattern.length() == 0 ? "" : "|").append(Pattern.quote(name.trim()));
+			}
+		}
+		return pattern.length() == 0 ? "(?!)" : ".*/(" + pattern + ")$";
+	}
+
 	protected Configuration newConfigurationInstance(Class<?> clazz) {
 		 try {
 			return (Configuration)clazz.newInstance();
@@ -171,23 +322,67 @@ public class JettyLauncher extends AbstractLauncher {
 
 	protected Server configureHttpServer(WebAppContext context, int serverPort, String serverHost) {
 
-		Server server = new Server(serverPort);
-		Connector connector = server.getConnectors()[0];
+		Server server = new Server();
+		server.setThreadPool(createThreadPool());
 
-		// Set some timeout options to make debugging easier.
-		connector.setMaxIdleTime(1000 * 60 * 60);
-		if (connector instanceof SocketConnector) {
-			((SocketConnector)connector).setSoLingerTime(-1);
+		AbstractConnector connector;
+		if (getBooleanArg("nio", true)) {
+			connector = new SelectChannelConnector();
+		}
+		else {
+			SocketConnector socketConnector = new SocketConnector();
+			socketConnector.setSoLingerTime(-1);
+			connector = socketConnector;
 		}
+		connector.setPort(serverPort);
+		configureConnector(connector);
 
 		if (hasLength(serverHost)) {
 			connector.setHost(serverHost);
 		}
 
-		server.setHandler(context);
+		server.setConnectors(new Connector[] { connector });
+
+		// tracks the requests in flight for a graceful shutdown
+		statisticsHandler = new StatisticsHandler();
+		Handler handler = isMetricsEnabled() ? createMetricsHandler(context) : context;
+		if (accessLog != null) {
+			RequestLogHandler requestLogHandler = new RequestLogHandler();
+			requestLogHandler.setRequestLog(new AsyncRequestLog(accessLog));
+			requestLogHandler.setHandler(handler);
+			handler = requestLogHandler;
+		}
+		statisticsHandler.setHandler(handler);
+		server.setHandler(statisticsHandler);
 		return server;
 	}
 
+	protected ThreadPool createThreadPool() {
+		if (getBooleanArg("virtualThreads", false)) {
+			ExecutorService executor = createVirtualThreadExecutor();
+			if (executor != null) {
+				System.out.println("Processing requests on virtual threads");
+				return new ExecutorThreadPool(executor);
+			}
+		}
+
+		QueuedThreadPool threadPool = new QueuedThreadPool();
+		threadPool.setMaxThreads(getIntArg("maxThreads", threadPool.getMaxThreads()));
+		threadPool.setMinThreads(getIntArg("minSpareThreads", threadPool.getMinThreads()));
+		return threadPool;
+	}
+
+	/**
+	 * Applies the idle timeout, acceptor and queue settings. With the NIO
+	 * connectors Jetty 7 uses one selector per acceptor thread.
+	 */
+	protected void configureConnector(AbstractConnector connector) {
+		connector.setMaxIdleTime(getIntArg("idleTimeout", 30000));
+		connector.setAcceptors(getIntArg("acceptors", connector.getAcceptors()));
+		connector.setAcceptQueueSize(getIntArg("acceptCount", connector.getAcceptQueueSize()));
+		connector.setStatsOn(isMetricsEnabled());
+	}
+
 	protected Server configureHttpsServer(WebAppContext context, int httpPort, int httpsPort, String serverHost, File keystoreFile,
 			String keystorePassword, boolean usingUserKeystore) throws IOException {
 
@@ -202,12 +397,18 @@ public class JettyLauncher extends AbstractLauncher {
 	@SuppressWarnings("deprecation")
 	protected void createSslConnector(Server server, int httpsPort, String serverHost, File keystoreFile, String keystorePassword) {
 
-		SslSocketConnector secureListener = new SslSocketConnector();
+		SslConnector secureListener;
+		if (getBooleanArg("nio", true)) {
+			secureListener = new SslSelectChannelConnector();
+		}
+		else {
+			secureListener = new SslSocketConnector();
+		}
 		secureListener.setPort(httpsPort);
 		if (hasLength(serverHost)) {
 			secureListener.setHost(serverHost);
 		}
-		secureListener.setMaxIdleTime(50000);
+		configureConnector((AbstractConnector) secureListener);
 		secureListener.setPassword(keystorePassword);
 		secureListener.setKeyPassword(keystorePassword);
 		secureListener.setKeystore(keystoreFile.getAbsolutePath());
@@ -221,9 +422,129 @@ public class JettyLauncher extends AbstractLauncher {
 		server.setConnectors(allConnectors);
 	}
 
+	/**
+	 * Records each request's latency; asynchronous requests are timed until the
+	 * container thread returns.
+	 */
+	protected Handler createMetricsHandler(Handler handler) {
+		HandlerWrapper metricsHandler = new HandlerWrapper() {
+			@Override
+			public void handle(String target, Request baseRequest, HttpServletRequest request,
+					HttpServletResponse response) throws IOException, ServletException {
+				long start = System.nanoTime();
+				try {
+					super.handle(target, baseRequest, request, response);
+				}
+				finally {
+					requestLatency.record(baseRequest.getResponse().getStatus(), System.nanoTime() - start);
+				}
+			}
+		};
+		metricsHandler.setHandler(handler);
+		return metricsHandler;
+	}
+
+	@Override
+	protected void writeServerMetrics(StringBuilder out) {
+		writeMetricHeader(out, "standalone_connections_open", "gauge", "Open connections");
+		for (Connector connector : server.getConnectors()) {
+			if (connector instanceof AbstractConnector) {
+				writeSample(out, "standalone_connections_open", "port=\"" + connector.getPort() + "\"",
+						((AbstractConnector) connector).getConnectionsOpen());
+			}
+		}
+
+		if (server.getThreadPool() instanceof QueuedThreadPool) {
+			QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+			writeMetricHeader(out, "standalone_threads_busy", "gauge", "Busy request threads");
+			writeSample(out, "standalone_threads_busy", null, threadPool.getThreads() - threadPool.getIdleThreads());
+			writeMetricHeader(out, "standalone_threads_current", "gauge", "Request threads");
+			writeSample(out, "standalone_threads_current", null, threadPool.getThreads());
+			writeMetricHeader(out, "standalone_threads_max", "gauge", "Maximum request threads");
+			writeSample(out, "standalone_threads_max", null, threadPool.getMaxThreads());
+		}
+	}
+
+	@Override
+	protected String getServerMetricsSummary() {
+		StringBuilder summary = new StringBuilder();
+		if (server.getThreadPool() instanceof QueuedThreadPool) {
+			QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+			summary.append("threads ").append(threadPool.getThreads() - threadPool.getIdleThreads()).append('/')
+					.append(threadPool.getThreads()).append('/').append(threadPool.getMaxThreads()).append(" busy/current/max");
+		}
+		for (Connector connector : server.getConnectors()) {
+			if (connector instanceof AbstractConnector) {
+				summary.append(summary.length() == 0 ? "" : ", ").append("port ").append(connector.getPort())
+						.append(" connections ").append(((AbstractConnector) connector).getConnectionsOpen());
+			}
+		}
+		return summary.toString();
+	}
+
+	protected void addShutdownHook() {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				if (server != null) {
+					shutdownGracefully();
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void pauseConnectors() throws IOException {
+		for (Connector connector : server.getConnectors()) {
+			connector.close();
+		}
+	}
+
+	@Override
+	protected int getActiveRequests() {
+		return statisticsHandler == null ? 0 : statisticsHandler.getRequestsActive();
+	}
+
+	@Override
+	protected void stopServer() throws Exception {
+		server.stop();
+	}
+
 	protected void setSystemProperty(String name, String value) {
 		if (!hasLength(System.getProperty(name))) {
 			System.setProperty(name, value);
 		}
 	}
+
+	/**
+	 * Hands completed requests to the access log writer.
+	 */
+	protected static class AsyncRequestLog extends AbstractLifeCycle implements RequestLog {
+
+		protected final AsyncAccessLogWriter writer;
+
+		public AsyncRequestLog(AsyncAccessLogWriter writer) {
+			this.writer = writer;
+		}
+
+		public void log(Request request, Response response) {
+			AsyncAccessLogWriter.Entry entry = writer.acquire();
+			if (entry == null) {
+				return;
+			}
+
+			entry.timestamp = request.getTimeStamp();
+			entry.durationMillis = System.currentTimeMillis() - request.getTimeStamp();
+			entry.status = response.getStatus();
+			entry.bytes = response.getContentCount();
+			entry.remoteAddr = request.getRemoteAddr();
+			entry.method = request.getMethod();
+			entry.uri = request.getRequestURI();
+			entry.query = request.getQueryString();
+			entry.protocol = request.getProtocol();
+			entry.referer = request.getHeader("Referer");
+			entry.userAgent = request.getHeader("User-Agent");
+			writer.publish(entry);
+		}
+	}
 }
@@ -16,26 +16,56 @@ package grails.plugin.standalone;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.ServletException;
 
+import org.apache.catalina.AccessLog;
+import org.apache.catalina.Container;
 import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleEvent;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Server;
-import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.Session;
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.connector.Connector;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
 import org.apache.catalina.core.AprLifecycleListener;
+import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.core.StandardServer;
+import org.apache.catalina.core.StandardThreadExecutor;
+import org.apache.catalina.session.FileStore;
+import org.apache.catalina.session.PersistentManagerBase;
+import org.apache.catalina.session.StandardManager;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.valves.CrawlerSessionManagerValve;
 import org.apache.catalina.valves.RemoteIpValve;
+import org.apache.catalina.valves.ValveBase;
 import org.apache.catalina.webresources.StandardRoot;
+import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.http11.Http11NioProtocol;
 import org.apache.coyote.http2.Http2Protocol;
+import org.apache.tomcat.util.net.jsse.JSSEImplementation;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.apache.tomcat.util.scan.StandardJarScanFilter;
 
 /**
  * Main class; extracts the embedded war and starts Tomcat. Inlines some utility
@@ -49,8 +79,19 @@ import org.apache.coyote.http2.Http2Protocol;
  */
 public class Launcher extends AbstractLauncher {
 
+	protected static final String[] CONNECTOR_ARGS = {
+		"acceptCount", "connectionTimeout", "keepAliveTimeout", "maxConnections", "maxKeepAliveRequests",
+		"maxThreads", "minSpareThreads" };
+
 	protected Tomcat tomcat = new Tomcat();
+	protected final AtomicInteger activeRequests = new AtomicInteger();
 	protected Context context;
+	protected StandardRoot resources;
+	protected StandardThreadExecutor sharedExecutor;
+	protected ExecutorService virtualThreadExecutor;
+
+	private long lastCacheLookups;
+	private long lastCacheHits;
 
 	/**
 	 * Start the server.
@@ -59,6 +100,50 @@ public class Launcher extends AbstractLauncher {
 	 *           optional, these are supported<br/>
 	 *           <ul>
 	 *           <li>workDir, defaults to 'java.io.tmpdir' system property</li>
+	 *           <li>extractionCache, whether to reuse a cached extraction keyed by the war digest, defaults to false</li>
+	 *           <li>extractThreads, the number of threads used to extract the war, defaults to 1</li>
+	 *           <li>explodeWar, whether to explode the war; if false Tomcat serves it packed, defaults to true</li>
+	 *           <li>cds, whether to run in a child JVM with an application class data sharing archive, defaults to false</li>
+	 *           <li>cdsArchive, the class data sharing archive path, defaults to the jar path with a .jsa extension</li>
+	 *           <li>cdsChildJvmArgs, JVM options for the server JVM started with cds=true, e.g. agents and JMX ports</li>
+	 *           <li>cdsTrainingRun, whether to exit once the server has started, defaults to false</li>
+	 *           <li>startStopThreads, the number of threads the engine, host and context use to start their children, 0 for one per core, defaults to 1</li>
+	 *           <li>backgroundProcessorDelay, the seconds between runs of the engine's background processing (session expiry, reloading checks), defaults to 10</li>
+	 *           <li>startupTimings, whether to log the duration of each startup phase, defaults to true</li>
+	 *           <li>shutdownPort, the loopback port that accepts the shutdown token, defaults to port + 1</li>
+	 *           <li>shutdownToken, the token that triggers a shutdown, defaults to a random token written to the work dir</li>
+	 *           <li>shutdownTimeout, the seconds to wait for requests in flight before stopping, defaults to 30</li>
+	 *           <li>adminPort, the port for the /health/live and /health/ready endpoints, no default</li>
+	 *           <li>adminHost, the host the admin port binds to, defaults to the host arg</li>
+	 *           <li>warmupUrls, comma-delimited paths or URLs to request before reporting ready, no default</li>
+	 *           <li>warmupIterations, how many times to request each warm-up URL, defaults to 1</li>
+	 *           <li>warmupConcurrency, the number of threads making warm-up requests, defaults to 4</li>
+	 *           <li>warmupTimeout, the maximum seconds to spend warming up, defaults to 300</li>
+	 *           <li>metrics, whether to serve request latency, connector, thread pool and cache metrics at /metrics on the admin port, defaults to true</li>
+	 *           <li>metricsLogInterval, the seconds between request and thread pool summaries in the log, defaults to 0 (never)</li>
+	 *           <li>bufferSize, the copy and extraction buffer size in kB, defaults to 64</li>
+	 *           <li>extractionCacheRetain, the number of most recently used extraction cache entries to keep (entries in use are never removed), defaults to 2</li>
+	 *           <li>workDirGc, whether to delete stale directories in the work dir in the background, defaults to true</li>
+	 *           <li>sessionStore, 'memory' or 'file' to keep idle and overflow sessions in a file store that survives restarts, defaults to 'memory'</li>
+	 *           <li>sessionStoreDir, the file store directory, defaults to 'standalone-sessions/&lt;context&gt;' in the work dir</li>
+	 *           <li>maxActiveSessions, the maximum number of sessions in memory, the least recently used one is evicted for a new one, defaults to -1 (unlimited)</li>
+	 *           <li>sessionMaxIdleSwap, the seconds a session can be idle before it's moved to the file store, defaults to 300</li>
+	 *           <li>sessionMinIdleSwap, the seconds a session must be idle before it can be evicted to stay under maxActiveSessions, defaults to 0</li>
+	 *           <li>crawlerValve, whether to give each crawler one session, defaults to true</li>
+	 *           <li>crawlerUserAgents, the regex of crawler user agents, defaults to Tomcat's</li>
+	 *           <li>crawlerSessionInactiveInterval, the seconds before a crawler's session expires, defaults to 60</li>
+	 *           <li>accessLog, the access log file, no default (no access log)</li>
+	 *           <li>accessLogBufferSize, the number of access log records that can wait to be written before new ones are dropped, defaults to 8192</li>
+	 *           <li>accessLogMaxSize, the size in MB at which the access log is rotated, defaults to 100 (0 to not rotate by size)</li>
+	 *           <li>accessLogRotateInterval, the seconds after which the access log is rotated, defaults to 86400 (0 to not rotate by time)</li>
+	 *           <li>responseCache, whether to cache GET responses that allow it with Cache-Control, defaults to false</li>
+	 *           <li>responseCacheMaxSize, the maximum response cache size in MB, defaults to 64</li>
+	 *           <li>responseCacheMaxEntrySize, the size in kB of the largest response to cache, defaults to 1024</li>
+	 *           <li>responseCacheCoalesceTimeout, the seconds a request waits for a concurrent request for the same response, defaults to 5</li>
+	 *           <li>etagManifest, whether to use the build-time digests for strong static resource ETags, defaults to true</li>
+	 *           <li>staticCacheControl, the Cache-Control header for static resources in the ETag manifest, defaults to 'no-cache'</li>
+	 *           <li>sendfileSize, the size in kB from which static files are sent with sendfile, defaults to 48 (-1 to disable)</li>
+	 *           <li>streamExtract, whether to explode the war directly from the jar without a temp copy, defaults to false</li>
 	 *           <li>context, defaults to ''</li>
 	 *           <li>host, defaults to 'localhost'</li>
 	 *           <li>port, defaults to 8080</li>
@@ -77,6 +162,25 @@ public class Launcher extends AbstractLauncher {
 	 *           <li>certificateFile, the path to the OpenSSL certificate file, no default</li>
 	 *           <li>certificateKeyFile, the path to the OpenSSL certificate private key file, no default</li>
 	 *           <li>certificateKeyPassword, the password for the OpenSSL certificate private key file, no default</li>
+	 *           <li>maxThreads, the maximum number of request processing threads, defaults to 200</li>
+	 *           <li>minSpareThreads, the minimum number of idle request processing threads, defaults to 10</li>
+	 *           <li>acceptCount, the connection queue length when all threads are busy, defaults to 100</li>
+	 *           <li>maxConnections, the maximum number of open connections, defaults to 10000</li>
+	 *           <li>keepAliveTimeout, the keep-alive timeout in milliseconds, defaults to connectionTimeout</li>
+	 *           <li>maxKeepAliveRequests, the maximum requests per keep-alive connection, defaults to 100</li>
+	 *           <li>connectionTimeout, the time in milliseconds to wait for a request after connecting, defaults to 60000</li>
+	 *           <li>sharedExecutor, whether the HTTP and HTTPS connectors share one thread pool, defaults to false</li>
+	 *           <li>virtualThreads, whether to process requests on virtual threads when the JVM supports them, defaults to false</li>
+	 *           <li>enableHttp2, whether the HTTPS connector supports HTTP/2, defaults to true</li>
+	 *           <li>enableH2c, whether the HTTP connector supports cleartext HTTP/2 (h2c), defaults to false</li>
+	 *           <li>sslImplementation, 'apr' or 'jsse', defaults to 'apr' if OpenSSL certificate files are specified, otherwise 'jsse'</li>
+	 *           <li>precompressed, whether to serve precompressed static resources, defaults to false</li>
+	 *           <li>jarScanIndex, whether to only scan the jars listed in the index written by build-standalone, defaults to true</li>
+	 *           <li>resourceCache, whether to cache static resources, defaults to true</li>
+	 *           <li>resourceCacheMaxSize, the maximum resource cache size in kB, defaults to 51200</li>
+	 *           <li>resourceCacheTtl, the time in milliseconds before a cached resource is revalidated, defaults to 5000</li>
+	 *           <li>resourceCacheObjectMaxSize, the largest resource in kB that will be cached, defaults to 1/20 of the cache size</li>
+	 *           <li>resourceCacheReportInterval, how often in seconds to log resource cache statistics, plus once at shutdown, defaults to 0 (disabled)</li>
 	 *           </ul>
 	 *           In addition, if you specify a value that is the name of a system
 	 *           property (e.g. 'home.dir'), the system property value will be used.
@@ -84,7 +188,14 @@ public class Launcher extends AbstractLauncher {
 	public static void main(String[] args) {
 		try {
 			final Launcher launcher = new Launcher(args);
-			final File exploded = launcher.extractWar();
+			int exitCode = launcher.runWithClassDataSharing(args);
+			if (exitCode != -1) {
+				System.exit(exitCode);
+			}
+
+			final File exploded = launcher.getBooleanArg("explodeWar", true) ?
+					launcher.extractWar() : launcher.extractPackedWar();
+			launcher.markPhase("war extraction");
 			launcher.deleteExplodedOnShutdown(exploded);
 			launcher.start(exploded);
 		}
@@ -130,7 +241,10 @@ public class Launcher extends AbstractLauncher {
 		}
 
 		File tomcatDir = new File(workDir, "grails-standalone-tomcat");
-		deleteDir(tomcatDir);
+		File oldTomcatDir = moveAside(tomcatDir);
+		if (oldTomcatDir != null) {
+			deleteInBackground(Collections.singletonList(oldTomcatDir));
+		}
 
 		boolean enableCompression = getBooleanArg("enableCompression", true);
 		String compressableMimeTypes = getArg("compressableMimeTypes", "");
@@ -141,16 +255,21 @@ public class Launcher extends AbstractLauncher {
 		String serverName = getArg("serverName", null);
 		boolean enableProxySupport = getBooleanArg("enableProxySupport", false);
 
+		startAccessLog();
 		configureTomcat(tomcatDir, contextPath, exploded, host, port,
 				httpsPort, keystoreFile, keystorePassword, usingUserKeystore,
 				enableClientAuth, truststorePath, trustStorePassword,
 				sessionTimeout, enableCompression, compressableMimeTypes, useNio,
 				serverName, enableProxySupport, certificateFile,
 				certificateKeyFile, certificateKeyPassword);
+		markPhase("configuration");
 
-		startKillSwitchThread(port);
+		startShutdownListener(getIntArg("shutdownPort", port + 1));
+		startAdminServer();
+		startMetrics();
 		addShutdownHook();
 		addFailureLifecycleListener(contextPath);
+		addStartupTimingListeners();
 
 		startTomcat(host, port, contextPath, httpsPort > 0 ? httpsPort : null);
 	}
@@ -166,19 +285,83 @@ public class Launcher extends AbstractLauncher {
 		tomcat.setPort(port);
 
 		tomcat.setBaseDir(tomcatDir.getPath());
+		if (exploded.isFile()) {
+			// serve directly from the packed war; nested jars are read in place
+			((StandardHost) tomcat.getHost()).setUnpackWARs(false);
+		}
 		context = tomcat.addWebapp(contextPath, exploded.getAbsolutePath());
 
-		WebResourceRoot resources = new StandardRoot(context);
-		resources.setCacheMaxSize(50 * 1024 * 1024);
+		// 0 uses one thread per core to start child containers in parallel
+		Container engine = tomcat.getEngine();
+		int startStopThreads = getIntArg("startStopThreads", engine.getStartStopThreads());
+		engine.setStartStopThreads(startStopThreads);
+		tomcat.getHost().setStartStopThreads(startStopThreads);
+		context.setStartStopThreads(startStopThreads);
+		engine.setBackgroundProcessorDelay(getIntArg("backgroundProcessorDelay", engine.getBackgroundProcessorDelay()));
+
+		resources = new StandardRoot(context);
+		configureResourceCache();
 		context.setResources(resources);
 
+		Properties jarScanIndex = loadJarScanIndex();
+		if (jarScanIndex != null) {
+			// only scan the jars that build-standalone found TLDs, fragments or annotations in
+			StandardJarScanFilter jarScanFilter = new StandardJarScanFilter();
+			jarScanFilter.setDefaultTldScan(false);
+			jarScanFilter.setTldScan(jarScanIndex.getProperty("tldScan", ""));
+			// there's no list if an initializer in the war uses @HandlesTypes, since that needs every jar scanned
+			String pluggabilityScan = jarScanIndex.getProperty("pluggabilityScan");
+			if (pluggabilityScan != null) {
+				jarScanFilter.setDefaultPluggabilityScan(false);
+				jarScanFilter.setPluggabilityScan(pluggabilityScan);
+			}
+			context.getJarScanner().setJarScanFilter(jarScanFilter);
+		}
+
+		if (getBooleanArg("precompressed", false)) {
+			// serve the .gz/.br siblings created by build-standalone when the client accepts them
+			setDefaultServletInitParameter("precompressed", "true");
+		}
+
+		String sendfileSize = getArg("sendfileSize");
+		if (hasLength(sendfileSize)) {
+			// the NIO and APR connectors send files of at least this many kB with sendfile; -1 disables it
+			setDefaultServletInitParameter("sendfileSize", sendfileSize);
+		}
+
 		tomcat.enableNaming();
 
+		if (getBooleanArg("virtualThreads", false)) {
+			virtualThreadExecutor = createVirtualThreadExecutor();
+		}
+		if (virtualThreadExecutor != null) {
+			System.out.println("Processing requests on virtual threads");
+			tomcat.getServer().addLifecycleListener(new LifecycleListener() {
+				public void lifecycleEvent(LifecycleEvent event) {
+					if (Lifecycle.AFTER_STOP_EVENT.equals(event.getType())) {
+						virtualThreadExecutor.shutdown();
+					}
+				}
+			});
+		}
+		else if (getBooleanArg("sharedExecutor", false)) {
+			sharedExecutor = createSharedExecutor();
+		}
+
 		if (useNio) {
 			addNioConnector(port);
 		}
 
-		tomcat.getEngine().getPipeline().addValve(new CrawlerSessionManagerValve());
+		addRequestTrackingValve();
+		if (accessLog != null) {
+			AsyncAccessLogValve accessLogValve = new AsyncAccessLogValve(accessLog);
+			// log the client address that RemoteIpValve takes from X-Forwarded-For
+			accessLogValve.setRequestAttributesEnabled(enableProxySupport);
+			tomcat.getEngine().getPipeline().addValve(accessLogValve);
+		}
+		if (getBooleanArg("crawlerValve", true)) {
+			tomcat.getEngine().getPipeline().addValve(createCrawlerValve());
+		}
 
 		if (enableProxySupport) {
 			RemoteIpValve remoteIpValve = new RemoteIpValve();
@@ -204,7 +387,25 @@ public class Launcher extends AbstractLauncher {
 
 		connector.setURIEncoding("UTF-8");
 
+		if (getBooleanArg("enableH2c", false)) {
+			// cleartext HTTP/2, e.g. behind a TLS-terminating proxy
+			connector.addUpgradeProtocol(new Http2Protocol());
+		}
+
+		configureConnector(connector);
+
 		context.setSessionTimeout(sessionTimeout);
+		configureSessionManager(tomcatDir.getParentFile());
+
+		Map<String, String> etags = loadEtagManifest();
+		if (etags != null) {
+			addStaticEtagFilter(etags);
+		}
+
+		createResponseCache();
+		if (responseCache != null) {
+			addResponseCacheFilter();
+		}
 
 		if (httpsPort > 0) {
 			initSsl(keystoreFile, keystorePassword, usingUserKeystore);
@@ -213,34 +414,197 @@ public class Launcher extends AbstractLauncher {
 		}
 	}
 
-	protected void startKillSwitchThread(final int serverPort) {
-		new Thread() {
-			@Override
-			public void run() {
-				int killListenerPort = serverPort + 1;
-				ServerSocket serverSocket = createKillSwitch(killListenerPort);
-				if (serverSocket != null) {
-					try {
-						serverSocket.accept();
-						try {
-							tomcat.stop();
-						}
-						catch (LifecycleException e) {
-							die(e, "Error stopping Tomcat: " + e.getMessage());
-						}
-					}
-					catch (IOException e) {
-						// just exit
+	/**
+	 * Adds the ETag filter first, so conditional requests for static resources
+	 * are answered before any other filter runs.
+	 */
+	protected void addStaticEtagFilter(Map<String, String> etags) {
+		FilterDef filterDef = new FilterDef();
+		filterDef.setFilterName("standaloneStaticEtag");
+		filterDef.setFilterClass(StaticEtagFilter.class.getName());
+		// the order in which the default servlet looks for precompressed siblings
+		String[] encodings = getBooleanArg("precompressed", false) ? new String[] { "br", "gzip" } : null;
+		filterDef.setFilter(new StaticEtagFilter(etags, getStaticCacheControl(), encodings));
+		filterDef.setAsyncSupported("true");
+		context.addFilterDef(filterDef);
+
+		FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName(filterDef.getFilterName());
+		filterMap.addURLPattern("/*");
+		context.addFilterMapBefore(filterMap);
+	}
+
+	/**
+	 * Adds the response cache filter before the application's filters.
+	 */
+	protected void addResponseCacheFilter() {
+		FilterDef filterDef = new FilterDef();
+		filterDef.setFilterName("standaloneResponseCache");
+		filterDef.setFilterClass(ResponseCacheFilter.class.getName());
+		filterDef.setFilter(new ResponseCacheFilter(responseCache, getResponseCacheCoalesceTimeout(), true));
+		filterDef.setAsyncSupported("true");
+		context.addFilterDef(filterDef);
+
+		FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName(filterDef.getFilterName());
+		filterMap.addURLPattern("/*");
+		context.addFilterMapBefore(filterMap);
+	}
+
+	/**
+	 * The crawler valve gives all requests from a bot's IP address one session
+	 * instead of a new one per request.
+	 */
+	protected CrawlerSessionManagerValve createCrawlerValve() {
+		CrawlerSessionManagerValve crawlerValve = new CrawlerSessionManagerValve();
+		String userAgents = getArg("crawlerUserAgents");
+		if (hasLength(userAgents)) {
+			crawlerValve.setCrawlerUserAgents(userAgents);
+		}
+		crawlerValve.setSessionInactiveInterval(getIntArg("crawlerSessionInactiveInterval", 60));
+		return crawlerValve;
+	}
+
+	/**
+	 * With 'sessionStore=file' sessions are kept by a PersistentManager backed by a
+	 * FileStore outside the Tomcat dir: sessions idle for 'sessionMaxIdleSwap' seconds
+	 * are moved out of the heap, the least recently used one is swapped out when a new
+	 * session would exceed 'maxActiveSessions', and at shutdown all are saved. Sessions
+	 * are read back individually when they're next requested, so nothing is loaded at
+	 * startup. With the default in-memory manager the least recently used session is
+	 * expired instead. Either way a session is only evicted once it's been idle for
+	 * 'sessionMinIdleSwap' seconds; if none has, the new session is rejected. The
+	 * least recently used session is picked from a sample, see {@link EvictionSampler}.
+	 */
+	protected void configureSessionManager(File workDir) {
+		int maxActiveSessions = getIntArg("maxActiveSessions", -1);
+		String sessionStore = getArg("sessionStore", "memory");
+
+		if ("file".equalsIgnoreCase(sessionStore)) {
+			String contextName = context.getPath().length() == 0 ? "ROOT" : context.getPath().substring(1).replace('/', '#');
+			File sessionDir = new File(getArg("sessionStoreDir",
+					new File(workDir, "standalone-sessions/" + contextName).getPath())).getAbsoluteFile();
+			sessionDir.mkdirs();
+
+			FileStore store = new FileStore();
+			store.setDirectory(sessionDir.getPath());
+
+			LruPersistentManager manager = new LruPersistentManager();
+			manager.setStore(store);
+			manager.setSaveOnRestart(true);
+			manager.setMaxActiveSessions(maxActiveSessions);
+			manager.setMaxIdleSwap(getIntArg("sessionMaxIdleSwap", 300));
+			manager.setMinIdleSwap(getIntArg("sessionMinIdleSwap", 0));
+			context.setManager(manager);
+			System.out.println("Storing sessions in " + sessionDir);
+		}
+		else if (maxActiveSessions > 0) {
+			LruStandardManager manager = new LruStandardManager();
+			manager.setMaxActiveSessions(maxActiveSessions);
+			manager.setMinIdleSeconds(getIntArg("sessionMinIdleSwap", 0));
+			context.setManager(manager);
+		}
+	}
+
+	/**
+	 * Tomcat adds the "default" servlet when the context starts, so the parameter
+	 * is set from a listener registered after the one that adds it.
+	 */
+	protected void setDefaultServletInitParameter(final String name, final String value) {
+		context.addLifecycleListener(new LifecycleListener() {
+			public void lifecycleEvent(LifecycleEvent event) {
+				if (Lifecycle.BEFORE_START_EVENT.equals(event.getType())) {
+					Wrapper defaultServlet = (Wrapper) context.findChild("default");
+					if (defaultServlet != null) {
+						defaultServlet.addInitParameter(name, value);
 					}
 				}
 			}
-		}.start();
+		});
+	}
+
+	/**
+	 * Sizes are in kB and the TTL is in milliseconds, as in StandardRoot.
+	 */
+	protected void configureResourceCache() {
+		resources.setCachingAllowed(getBooleanArg("resourceCache", true));
+		resources.setCacheMaxSize(getIntArg("resourceCacheMaxSize", 50 * 1024));
+		resources.setCacheTtl(getIntArg("resourceCacheTtl", 5000));
+		int objectMaxSize = getIntArg("resourceCacheObjectMaxSize", 0);
+		if (objectMaxSize > 0) {
+			resources.setCacheObjectMaxSize(objectMaxSize);
+		}
+
+		int reportInterval = getIntArg("resourceCacheReportInterval", 0);
+		if (reportInterval > 0) {
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+					newDaemonThreadFactory("standalone-resource-cache-report"));
+			executor.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					logResourceCacheStatistics();
+				}
+			}, reportInterval, reportInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Logs the hit rate since startup and since the previous report, along with
+	 * how full the cache is. Tomcat doesn't count evictions, but a falling
+	 * interval hit rate with the cache at its maximum size means it's thrashing.
+	 */
+	protected synchronized void logResourceCacheStatistics() {
+		long lookups = getResourceCacheStatistic("lookupCount");
+		long hits = getResourceCacheStatistic("hitCount");
+		if (lookups < 0 || hits < 0) {
+			return;
+		}
+
+		long intervalLookups = lookups - lastCacheLookups;
+		long intervalHits = hits - lastCacheHits;
+		lastCacheLookups = lookups;
+		lastCacheHits = hits;
+
+		System.out.println("Resource cache: " + hits + "/" + lookups + " hits (" + percent(hits, lookups) +
+				" overall, " + percent(intervalHits, intervalLookups) + " since last report), " +
+				getResourceCacheStatistic("size") + "kB of " + getResourceCacheStatistic("maxSize") + "kB used");
+	}
+
+	/**
+	 * StandardRoot doesn't expose its Cache directly, so the counters are read
+	 * from the MBean it registers.
+	 *
+	 * @return the value, or -1 if the cache MBean isn't registered
+	 */
+	protected long getResourceCacheStatistic(String attribute) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			for (ObjectName name : server.queryNames(new ObjectName("*:type=WebResourceRoot,name=Cache,*"), null)) {
+				return ((Number) server.getAttribute(name, attribute)).longValue();
+			}
+		}
+		catch (Exception ignored) {
+			// not registered
+		}
+		return -1;
+	}
+
+	protected String percent(long count, long total) {
+		return total == 0 ? "n/a" : String.format("%.1f%%", count * 100.0 / total);
 	}
 
 	protected void startTomcat(String host, int port, String contextPath, Integer securePort) {
 		try {
 			tomcat.start();
+			if (context.getState() != LifecycleState.STARTED) {
+				setHealthState(AdminServer.State.FAILED);
+			}
+			else {
+				warmUp(host, port, contextPath);
+				markReady();
+			}
 			logStartMessage(host, port, securePort, contextPath);
+			logStartupTimings();
+			exitIfTrainingRun();
 		}
 		catch (LifecycleException e) {
 			die(e, "Error loading Tomcat: " + e.getMessage());
@@ -251,9 +615,14 @@ public class Launcher extends AbstractLauncher {
 			String truststorePath, String trustStorePassword, String host, String enableClientAuth,
 			String certificateFile, String certificateKeyFile, String certificateKeyPassword) {
 
+		// APR and Tomcat Native are only needed for OpenSSL certificate files; with JSSE
+		// the NIO connector negotiates HTTP/2 using the JDK's ALPN support (Java 9+)
+		boolean useOpenSsl = hasLength(certificateKeyFile) && hasLength(certificateFile);
+		boolean useApr = "apr".equalsIgnoreCase(getArg("sslImplementation", useOpenSsl ? "apr" : "jsse"));
+
 		Connector sslConnector;
 		try {
-			sslConnector = new Connector();
+			sslConnector = useApr ? new Connector() : new Connector(Http11NioProtocol.class.getName());
 		}
 		catch (Exception e) {
 			throw new RuntimeException("Couldn't create HTTPS connector", e);
@@ -290,16 +659,60 @@ public class Launcher extends AbstractLauncher {
 			sslConnector.setAttribute("address", host);
 		}
 
-		sslConnector.addUpgradeProtocol(new Http2Protocol());
+		if (getBooleanArg("enableHttp2", true)) {
+			sslConnector.addUpgradeProtocol(new Http2Protocol());
+		}
 
-		AprLifecycleListener aprLifecycleListener = new AprLifecycleListener();
-		aprLifecycleListener.setSSLEngine("on");
-		aprLifecycleListener.setUseAprConnector(true);
-		tomcat.getServer().addLifecycleListener(aprLifecycleListener);
+		if (useApr) {
+			AprLifecycleListener aprLifecycleListener = new AprLifecycleListener();
+			aprLifecycleListener.setSSLEngine("on");
+			aprLifecycleListener.setUseAprConnector(true);
+			tomcat.getServer().addLifecycleListener(aprLifecycleListener);
+		}
+		else {
+			sslConnector.setAttribute("sslImplementationName", JSSEImplementation.class.getName());
+		}
+
+		configureConnector(sslConnector);
 
 		tomcat.getService().addConnector(sslConnector);
 	}
 
+	/**
+	 * Creates a thread pool that the HTTP and HTTPS connectors share instead of
+	 * each creating their own.
+	 */
+	protected StandardThreadExecutor createSharedExecutor() {
+		StandardThreadExecutor executor = new StandardThreadExecutor();
+		executor.setName("standaloneThreadPool");
+		executor.setNamePrefix("http-exec-");
+		executor.setMaxThreads(getIntArg("maxThreads", 200));
+		executor.setMinSpareThreads(getIntArg("minSpareThreads", 10));
+		tomcat.getService().addExecutor(executor);
+		return executor;
+	}
+
+	/**
+	 * Applies the thread pool, queue and keep-alive settings to a connector. The
+	 * thread settings are ignored by Tomcat when the connector uses an executor,
+	 * and with virtual threads maxConnections is the effective concurrency limit.
+	 */
+	protected void configureConnector(Connector connector) {
+		if (virtualThreadExecutor != null) {
+			((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(virtualThreadExecutor);
+		}
+		else if (sharedExecutor != null) {
+			((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(sharedExecutor);
+		}
+
+		for (String name : CONNECTOR_ARGS) {
+			String value = getArg(name);
+			if (hasLength(value) && !connector.setProperty(name, value)) {
+				System.err.println("Warning, unable to set connector property '" + name + "' to '" + value + "'");
+			}
+		}
+	}
+
 	protected void addNioConnector(int port) {
 		System.out.println("Enabling Tomcat NIO Connector");
 		Connector connector = new Connector(Http11NioProtocol.class.getName());
@@ -308,30 +721,156 @@ public class Launcher extends AbstractLauncher {
 		tomcat.getService().addConnector(tomcat.getConnector());
 	}
 
-	protected ServerSocket createKillSwitch(int killListenerPort) {
-		try {
-			return new ServerSocket(killListenerPort);
+	protected void addShutdownHook() {
+		// add shutdown hook to drain and stop server
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				if (tomcat != null) {
+					shutdownGracefully();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Counts the requests in flight so a shutdown can wait for them, and records
+	 * each request's latency. Asynchronous requests are counted and timed until
+	 * the container thread returns.
+	 */
+	protected void addRequestTrackingValve() {
+		tomcat.getEngine().getPipeline().addValve(new ValveBase(true) {
+			public void invoke(Request request, Response response) throws IOException, ServletException {
+				long start = System.nanoTime();
+				activeRequests.incrementAndGet();
+				try {
+					getNext().invoke(request, response);
+				}
+				finally {
+					activeRequests.decrementAndGet();
+					requestLatency.record(response.getStatus(), System.nanoTime() - start);
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void writeServerMetrics(StringBuilder out) {
+		Connector[] connectors = tomcat.getService().findConnectors();
+
+		writeMetricHeader(out, "standalone_connections_open", "gauge", "Open connections");
+		for (Connector connector : connectors) {
+			if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+				writeSample(out, "standalone_connections_open", "port=\"" + connector.getPort() + "\"",
+						((AbstractProtocol<?>) connector.getProtocolHandler()).getConnectionCount());
+			}
 		}
-		catch (IOException e) {
-			return null;
+
+		String[] names = { "standalone_threads_busy", "standalone_threads_current", "standalone_threads_max", "standalone_thread_queue_size" };
+		String[] help = { "Busy request threads", "Request threads", "Maximum request threads", "Tasks waiting for a request thread" };
+		for (int i = 0; i < names.length; i++) {
+			writeMetricHeader(out, names[i], "gauge", help[i]);
+			for (Connector connector : connectors) {
+				int[] stats = getThreadPoolStatistics(connector);
+				if (stats != null) {
+					writeSample(out, names[i], "port=\"" + connector.getPort() + "\"", stats[i]);
+				}
+			}
+		}
+
+		long size = getResourceCacheStatistic("size");
+		if (size >= 0) {
+			writeMetricHeader(out, "standalone_resource_cache_size_kilobytes", "gauge", "Static resource cache size");
+			writeSample(out, "standalone_resource_cache_size_kilobytes", null, size);
+			writeMetricHeader(out, "standalone_resource_cache_max_size_kilobytes", "gauge", "Static resource cache maximum size");
+			writeSample(out, "standalone_resource_cache_max_size_kilobytes", null, getResourceCacheStatistic("maxSize"));
+			writeMetricHeader(out, "standalone_resource_cache_lookups_total", "counter", "Static resource cache lookups");
+			writeSample(out, "standalone_resource_cache_lookups_total", null, getResourceCacheStatistic("lookupCount"));
+			writeMetricHeader(out, "standalone_resource_cache_hits_total", "counter", "Static resource cache hits");
+			writeSample(out, "standalone_resource_cache_hits_total", null, getResourceCacheStatistic("hitCount"));
 		}
 	}
 
+	@Override
+	protected String getServerMetricsSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (Connector connector : tomcat.getService().findConnectors()) {
+			int[] stats = getThreadPoolStatistics(connector);
+			summary.append(summary.length() == 0 ? "" : ", ").append("port ").append(connector.getPort());
+			if (stats != null) {
+				summary.append(" threads ").append(stats[0]).append('/').append(stats[1]).append('/').append(stats[2])
+						.append(" busy/current/max, queue ").append(stats[3]);
+			}
+			if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+				summary.append(", connections ").append(((AbstractProtocol<?>) connector.getProtocolHandler()).getConnectionCount());
+			}
+		}
+		return summary.toString();
+	}
+
 	/**
-	 * Stops the embedded Tomcat server.
+	 * @return busy, current and maximum threads and the queue size of the connector's
+	 * executor, or null if it isn't a thread pool (e.g. virtual threads)
 	 */
-	protected void addShutdownHook() {
-		// add shutdown hook to stop server
-		Runtime.getRuntime().addShutdownHook(new Thread() {
-			@Override
-			public void run() {
-				try {
-					if (tomcat != null) {
-						tomcat.getServer().stop();
-					}
+	protected int[] getThreadPoolStatistics(Connector connector) {
+		Executor executor = connector.getProtocolHandler().getExecutor();
+		if (executor instanceof StandardThreadExecutor) {
+			StandardThreadExecutor pool = (StandardThreadExecutor) executor;
+			return new int[] { pool.getActiveCount(), pool.getPoolSize(), pool.getMaxThreads(), pool.getQueueSize() };
+		}
+		if (executor instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+			return new int[] { pool.getActiveCount(), pool.getPoolSize(), pool.getMaximumPoolSize(), pool.getQueue().size() };
+		}
+		return null;
+	}
+
+	@Override
+	protected void pauseConnectors() {
+		for (Connector connector : tomcat.getService().findConnectors()) {
+			connector.pause();
+		}
+	}
+
+	@Override
+	protected int getActiveRequests() {
+		return activeRequests.get();
+	}
+
+	@Override
+	protected void stopServer() throws LifecycleException {
+		// the cache MBean is unregistered when the context stops
+		if (getIntArg("resourceCacheReportInterval", 0) > 0) {
+			logResourceCacheStatistics();
+		}
+		tomcat.stop();
+	}
+
+	/**
+	 * Marks the startup phases; Spring and Grails bootstrap in the context's listeners,
+	 * which run between the configure start and after start events.
+	 */
+	protected void addStartupTimingListeners() {
+		tomcat.getConnector().addLifecycleListener(new LifecycleListener() {
+			public void lifecycleEvent(LifecycleEvent event) {
+				if (Lifecycle.AFTER_INIT_EVENT.equals(event.getType())) {
+					markPhase("server and connector init");
+				}
+				else if (Lifecycle.AFTER_START_EVENT.equals(event.getType())) {
+					markPhase("connector start");
+				}
+			}
+		});
+		context.addLifecycleListener(new LifecycleListener() {
+			public void lifecycleEvent(LifecycleEvent event) {
+				if (Lifecycle.BEFORE_START_EVENT.equals(event.getType())) {
+					markPhase("engine and host start");
 				}
-				catch (LifecycleException e) {
-					throw new RuntimeException("WARNING: Cannot Stop Tomcat " + e.getMessage(), e);
+				else if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+					markPhase("context configuration");
+				}
+				else if (Lifecycle.AFTER_START_EVENT.equals(event.getType())) {
+					markPhase("application bootstrap");
 				}
 			}
 		});
@@ -342,6 +881,7 @@ public class Launcher extends AbstractLauncher {
 		context.addLifecycleListener(new LifecycleListener() {
 			public void lifecycleEvent(LifecycleEvent event) {
 				if (event.getLifecycle().getState() == LifecycleState.FAILED) {
+					setHealthState(AdminServer.State.FAILED);
 					Server server = tomcat.getServer();
 					if (server instanceof StandardServer) {
 						System.err.println("SEVERE: Context [" + contextName + "] failed in [" +
@@ -352,4 +892,175 @@ public class Launcher extends AbstractLauncher {
 			}
 		});
 	}
+
+	/**
+	 * Picks the session to evict without scanning all of them: each call looks at the
+	 * next SAMPLE_SIZE sessions, continuing where the previous call stopped, and
+	 * returns the one among them that's been idle longest. Like Redis' approximated
+	 * LRU it doesn't always find the oldest session, but it finds an old one in
+	 * constant time however many sessions there are. Callers synchronize.
+	 */
+	protected static class EvictionSampler {
+
+		protected static final int SAMPLE_SIZE = 32;
+
+		protected Iterator<Session> cursor;
+
+		/**
+		 * @return the longest idle session in the sample, if it's been idle for at least
+		 * the minimum, otherwise null
+		 */
+		protected Session next(Map<String, Session> sessions, int minIdleSeconds) {
+			Session eldest = null;
+			boolean restarted = false;
+			for (int i = 0; i < SAMPLE_SIZE; i++) {
+				if (cursor == null || !cursor.hasNext()) {
+					if (restarted) {
+						// fewer sessions than the sample size
+						break;
+					}
+					cursor = sessions.values().iterator();
+					restarted = true;
+					if (!cursor.hasNext()) {
+						break;
+					}
+				}
+				Session session = cursor.next();
+				if (session.isValid() && (eldest == null ||
+						session.getLastAccessedTimeInternal() < eldest.getLastAccessedTimeInternal())) {
+					eldest = session;
+				}
+			}
+			return eldest != null && eldest.getIdleTimeInternal() >= minIdleSeconds * 1000L ? eldest : null;
+		}
+	}
+
+	/**
+	 * Swaps a least recently used session (see {@link EvictionSampler}) out to the
+	 * store when a new session would exceed maxActiveSessions, instead of rejecting
+	 * the new one. Tomcat only does this from the background thread, and in no
+	 * particular order. Only evictions are serialized; below the limit sessions are
+	 * created concurrently as usual.
+	 */
+	protected static class LruPersistentManager extends PersistentManagerBase {
+
+		protected final EvictionSampler sampler = new EvictionSampler();
+
+		@Override
+		public String getName() {
+			return "LruPersistentManager";
+		}
+
+		@Override
+		public Session createSession(String sessionId) {
+			if (getMaxActiveSessions() >= 0 && sessions.size() >= getMaxActiveSessions()) {
+				synchronized (sampler) {
+					while (sessions.size() >= getMaxActiveSessions()) {
+						Session eldest = sampler.next(sessions, getMinIdleSwap());
+						if (eldest == null) {
+							// the new session is rejected
+							break;
+						}
+						synchronized (eldest) {
+							try {
+								swapOut(eldest);
+							}
+							catch (IOException e) {
+								System.err.println("Warning, unable to swap out session: " + e.getMessage());
+								break;
+							}
+						}
+					}
+				}
+			}
+			return super.createSession(sessionId);
+		}
+	}
+
+	/**
+	 * Expires a least recently used session (see {@link EvictionSampler}) when a new
+	 * session would exceed maxActiveSessions, instead of rejecting the new one.
+	 */
+	protected static class LruStandardManager extends StandardManager {
+
+		protected final EvictionSampler sampler = new EvictionSampler();
+		protected int minIdleSeconds;
+
+		/**
+		 * @param minIdleSeconds how long a session must have been idle to be expired early
+		 */
+		public void setMinIdleSeconds(int minIdleSeconds) {
+			this.minIdleSeconds = minIdleSeconds;
+		}
+
+		public int getMinIdleSeconds() {
+			return minIdleSeconds;
+		}
+
+		@Override
+		public Session createSession(String sessionId) {
+			if (getMaxActiveSessions() >= 0 && sessions.size() >= getMaxActiveSessions()) {
+				synchronized (sampler) {
+					while (sessions.size() >= getMaxActiveSessions()) {
+						Session eldest = sampler.next(sessions, minIdleSeconds);
+						if (eldest == null) {
+							break;
+						}
+						eldest.expire();
+					}
+				}
+			}
+			return super.createSession(sessionId);
+		}
+	}
+
+	/**
+	 * Hands completed requests to the access log writer. As an AccessLog it's also
+	 * called for requests that Tomcat rejects before they reach the pipeline.
+	 */
+
+	protected static class AsyncAccessLogValve extends ValveBase implements AccessLog {
+
+		protected final AsyncAccessLogWriter writer;
+		protected boolean requestAttributesEnabled;
+
+		public AsyncAccessLogValve(AsyncAccessLogWriter writer) {
+			super(true);
+			this.writer = writer;
+		}
+
+		@Override
+		public void invoke(Request request, Response response) throws IOException, ServletException {
+			getNext().invoke(request, response);
+		}
+
+		public void log(Request request, Response response, long time) {
+			AsyncAccessLogWriter.Entry entry = writer.acquire();
+			if (entry == null) {
+				return;
+			}
+
+			entry.timestamp = request.getCoyoteRequest().getStartTime();
+			entry.durationMillis = time;
+			entry.status = response.getStatus();
+			entry.bytes = response.getBytesWritten(false);
+			Object remoteAddr = requestAttributesEnabled ? request.getAttribute(REMOTE_ADDR_ATTRIBUTE) : null;
+			entry.remoteAddr = remoteAddr == null ? request.getRemoteAddr() : remoteAddr.toString();
+			entry.method = request.getMethod();
+			entry.uri = request.getRequestURI();
+			entry.query = request.getQueryString();
+			entry.protocol = request.getProtocol();
+			entry.referer = request.getHeader("Referer");
+			entry.userAgent = request.getHeader("User-Agent");
+			writer.publish(entry);
+		}
+
+		public void setRequestAttributesEnabled(boolean requestAttributesEnabled) {
+			this.requestAttributesEnabled = requestAttributesEnabled;
+		}
+
+		public boolean getRequestAttributesEnabled() {
+			return requestAttributesEnabled;
+		}
+	}
 }
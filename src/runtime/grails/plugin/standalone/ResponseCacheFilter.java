@@ -0,0 +1,541 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Serves GET and HEAD requests from a {@link ResponseCache} and stores the
+ * responses of GET requests that allow it with Cache-Control max-age or
+ * s-maxage, keyed by the URL and the request headers named in the response's
+ * Vary header. Responses that are private, no-store, no-cache, set cookies,
+ * vary by '*' or are larger than the maximum entry size are not stored, and
+ * neither are responses to requests with an Authorization header.
+ * <p>
+ * Responses are written to the client as they're produced and copied aside, so
+ * a miss is no slower than without the cache. Concurrent misses are only
+ * coalesced for URLs whose last response was stored; the others are recorded
+ * as pass URLs and go straight to the application. Only the servlet 2.5 API is used
+ * on the request and response (headers are tracked by the wrapper), so this
+ * works with Jetty 7 as long as it's compiled against the servlet 3.1 API.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class ResponseCacheFilter implements Filter {
+
+	protected final ResponseCache cache;
+	protected final long coalesceTimeoutMillis;
+	protected final boolean asyncSupported;
+
+	/**
+	 * @param cache the store
+	 * @param coalesceTimeoutMillis how long to wait for a concurrent request for the same response
+	 * @param asyncSupported whether the container supports servlet 3 async requests,
+	 * whose responses aren't complete when the filter chain returns
+	 */
+	public ResponseCacheFilter(ResponseCache cache, long coalesceTimeoutMillis, boolean asyncSupported) {
+		this.cache = cache;
+		this.coalesceTimeoutMillis = coalesceTimeoutMillis;
+		this.asyncSupported = asyncSupported;
+	}
+
+	public void init(FilterConfig filterConfig) {
+		// nothing to do
+	}
+
+	public void destroy() {
+		// nothing to do
+	}
+
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		if (!(req instanceof HttpServletRequest) || !(res instanceof HttpServletResponse)) {
+			chain.doFilter(req, res);
+			return;
+		}
+
+		HttpServletRequest request = (HttpServletRequest) req;
+		HttpServletResponse response = (HttpServletResponse) res;
+		boolean head = "HEAD".equals(request.getMethod());
+		if ((!head && !"GET".equals(request.getMethod())) || request.getHeader("Authorization") != null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		String urlKey = getUrlKey(request);
+		boolean revalidate = isNoCacheRequest(request);
+		if (!revalidate) {
+			ResponseCache.Entry entry = lookup(request, urlKey);
+			if (entry != null) {
+				cache.recordHit();
+				send(entry, response, head);
+				return;
+			}
+		}
+
+		if (head) {
+			// there's no body to store
+			cache.recordMiss();
+			chain.doFilter(request, response);
+			return;
+		}
+
+		String key = cache.variantKey(urlKey, getVaryValues(request, cache.getVary(urlKey)));
+		boolean producer = false;
+		if (!revalidate && cache.isCacheable(urlKey)) {
+			CountDownLatch latch = cache.joinMiss(key);
+			if (latch == null) {
+				producer = true;
+			}
+			else if (await(latch)) {
+				ResponseCache.Entry entry = lookup(request, urlKey);
+				if (entry != null) {
+					cache.recordCoalesced();
+					send(entry, response, false);
+					return;
+				}
+			}
+		}
+
+		cache.recordMiss();
+		try {
+			produce(request, response, chain, urlKey);
+		}
+		finally {
+			if (producer) {
+				cache.finishMiss(key);
+			}
+		}
+	}
+
+	protected void produce(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+			String urlKey) throws IOException, ServletException {
+
+		CapturingResponse capture = new CapturingResponse(response, cache.getMaxEntrySize());
+		chain.doFilter(request, capture);
+		capture.flushWriter();
+
+		if (!store(request, response, capture, urlKey)) {
+			cache.pass(urlKey);
+		}
+	}
+
+	/**
+	 * @return false if the response can't be cached
+	 */
+	protected boolean store(HttpServletRequest request, HttpServletResponse response, CapturingResponse capture,
+			String urlKey) throws IOException {
+
+		if (!capture.cacheable || !isCacheableStatus(capture.status) || (asyncSupported && request.isAsyncStarted())) {
+			return false;
+		}
+
+		long maxAge = ResponseCache.getMaxAge(capture.getCapturedHeader("Cache-Control", false));
+		if (maxAge < 0) {
+			return false;
+		}
+
+		String[] vary = parseVary(capture.getCapturedHeader("Vary", false));
+		if (vary == null) {
+			return false;
+		}
+
+		byte[] body = capture.getBody(response.getCharacterEncoding());
+		if (body == null) {
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+		String key = cache.variantKey(urlKey, getVaryValues(request, vary));
+		cache.put(urlKey, vary, key, new ResponseCache.Entry(capture.status, response.getContentType(),
+				capture.headers, body, now, now + maxAge * 1000));
+		return true;
+	}
+
+	protected ResponseCache.Entry lookup(HttpServletRequest request, String urlKey) {
+		String key = cache.variantKey(urlKey, getVaryValues(request, cache.getVary(urlKey)));
+		return cache.get(key, System.currentTimeMillis());
+	}
+
+	protected boolean await(CountDownLatch latch) {
+		try {
+			return latch.await(coalesceTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	protected void send(ResponseCache.Entry entry, HttpServletResponse response, boolean head) throws IOException {
+		response.setStatus(entry.status);
+		if (entry.contentType != null) {
+			response.setContentType(entry.contentType);
+		}
+		for (String[] header : entry.headers) {
+			response.addHeader(header[0], header[1]);
+		}
+		response.setHeader("Age", String.valueOf(Math.max(0, (System.currentTimeMillis() - entry.created) / 1000)));
+		response.setContentLength(entry.body.length);
+		if (!head) {
+			response.getOutputStream().write(entry.body);
+		}
+	}
+
+	protected String getUrlKey(HttpServletRequest request) {
+		StringBuffer url = request.getRequestURL();
+		String query = request.getQueryString();
+		if (query != null) {
+			url.append('?').append(query);
+		}
+		return url.toString();
+	}
+
+	protected String[] getVaryValues(HttpServletRequest request, String[] vary) {
+		String[] values = new String[vary.length];
+		for (int i = 0; i < vary.length; i++) {
+			values[i] = request.getHeader(vary[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the lower case header names, or null if the response varies by '*'
+	 */
+	protected String[] parseVary(String vary) {
+		if (vary == null || vary.trim().length() == 0) {
+			return ResponseCache.NO_VARY;
+		}
+
+		List<String> names = new ArrayList<String>();
+		for (String name : vary.split(",")) {
+			name = name.trim().toLowerCase(Locale.ENGLISH);
+			if (name.equals("*")) {
+				return null;
+			}
+			if (name.length() > 0) {
+				names.add(name);
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	protected boolean isNoCacheRequest(HttpServletRequest request) {
+		String cacheControl = request.getHeader("Cache-Control");
+		if (cacheControl != null) {
+			cacheControl = cacheControl.toLowerCase(Locale.ENGLISH);
+			if (cacheControl.contains("no-cache") || cacheControl.contains("no-store") || cacheControl.contains("max-age=0")) {
+				return true;
+			}
+		}
+		String pragma = request.getHeader("Pragma");
+		return pragma != null && pragma.toLowerCase(Locale.ENGLISH).contains("no-cache");
+	}
+
+	protected boolean isCacheableStatus(int status) {
+		return status == 200 || status == 203 || status == 300 || status == 301 || status == 404 || status == 410;
+	}
+
+	/**
+	 * Passes everything through to the response, keeping a copy of the body (up to
+	 * the maximum entry size) and of the status and headers set by the application.
+	 */
+	protected static class CapturingResponse extends HttpServletResponseWrapper {
+
+		protected final int maxSize;
+		protected final List<String[]> headers = new ArrayList<String[]>();
+		protected int status = SC_OK;
+		protected boolean cacheable = true;
+		protected ByteArrayOutputStream bytes;
+		protected CharArrayWriter chars;
+		protected ServletOutputStream outputStream;
+		protected PrintWriter writer;
+
+		public CapturingResponse(HttpServletResponse response, int maxSize) {
+			super(response);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null) {
+				final ServletOutputStream target = super.getOutputStream();
+				bytes = new ByteArrayOutputStream(Math.min(maxSize, 8192));
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						target.write(b);
+						if (capture(1)) {
+							bytes.write(b);
+						}
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						target.write(b, off, len);
+						if (capture(len)) {
+							bytes.write(b, off, len);
+						}
+					}
+
+					@Override
+					public void flush() throws IOException {
+						target.flush();
+					}
+
+					@Override
+					public void close() throws IOException {
+						target.close();
+					}
+
+					public boolean isReady() {
+						return target.isReady();
+					}
+
+					public void setWriteListener(WriteListener writeListener) {
+						// non-blocking writes can outlive the filter chain
+						cacheable = false;
+						target.setWriteListener(writeListener);
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				final PrintWriter target = super.getWriter();
+				chars = new CharArrayWriter(Math.min(maxSize, 8192));
+				writer = new PrintWriter(new Writer() {
+					@Override
+					public void write(char[] c, int off, int len) throws IOException {
+						target.write(c, off, len);
+						if (capture(len)) {
+							chars.write(c, off, len);
+						}
+					}
+
+					@Override
+					public void flush() {
+						target.flush();
+					}
+
+					@Override
+					public void close() {
+						target.close();
+					}
+				});
+			}
+			return writer;
+		}
+
+		protected boolean capture(int length) {
+			if (!cacheable) {
+				return false;
+			}
+			int size = (bytes == null ? 0 : bytes.size()) + (chars == null ? 0 : chars.size());
+			if (size + length > maxSize) {
+				cacheable = false;
+				bytes = null;
+				chars = null;
+				return false;
+			}
+			return true;
+		}
+
+		protected void flushWriter() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+
+		/**
+		 * @return the body, or null if the application used both the stream and the writer
+		 */
+		protected byte[] getBody(String encoding) throws IOException {
+			if (bytes != null && chars != null && bytes.size() > 0 && chars.size() > 0) {
+				return null;
+			}
+			if (chars != null && chars.size() > 0) {
+				return new String(chars.toCharArray()).getBytes(encoding == null ? "ISO-8859-1" : encoding);
+			}
+			return bytes == null ? new byte[0] : bytes.toByteArray();
+		}
+
+		/**
+		 * @return the values of a header set by the application, comma separated, or null
+		 */
+		protected String getCapturedHeader(String name, boolean remove) {
+			String value = null;
+			for (Iterator<String[]> iterator = headers.iterator(); iterator.hasNext(); ) {
+				String[] header = iterator.next();
+				if (header[0].equalsIgnoreCase(name)) {
+					if (remove) {
+						iterator.remove();
+					}
+					else {
+						value = value == null ? header[1] : value + ", " + header[1];
+					}
+				}
+			}
+			return value;
+		}
+
+		protected void trackHeader(String name, String value, boolean replace) {
+			if (name.equalsIgnoreCase("Set-Cookie")) {
+				cacheable = false;
+			}
+			if (name.equalsIgnoreCase("Content-Type") || name.equalsIgnoreCase("Content-Length") ||
+					name.equalsIgnoreCase("Date") || name.equalsIgnoreCase("Age")) {
+				return;
+			}
+			if (replace) {
+				getCapturedHeader(name, true);
+			}
+			headers.add(new String[] { name, value });
+		}
+
+		protected String formatDate(long date) {
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new Date(date));
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			super.setHeader(name, value);
+			trackHeader(name, value, true);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			super.addHeader(name, value);
+			trackHeader(name, value, false);
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			super.setIntHeader(name, value);
+			trackHeader(name, String.valueOf(value), true);
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			super.addIntHeader(name, value);
+			trackHeader(name, String.valueOf(value), false);
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			super.setDateHeader(name, date);
+			trackHeader(name, formatDate(date), true);
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			super.addDateHeader(name, date);
+			trackHeader(name, formatDate(date), false);
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			super.addCookie(cookie);
+			cacheable = false;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			super.setStatus(sc);
+			status = sc;
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int sc, String sm) {
+			super.setStatus(sc, sm);
+			status = sc;
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			super.sendError(sc);
+			status = sc;
+			cacheable = false;
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			super.sendError(sc, msg);
+			status = sc;
+			cacheable = false;
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			super.sendRedirect(location);
+			status = SC_FOUND;
+			cacheable = false;
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			headers.clear();
+			status = SC_OK;
+			resetCapture();
+		}
+
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			resetCapture();
+		}
+
+		protected void resetCapture() {
+			if (bytes != null) {
+				bytes.reset();
+			}
+			if (chars != null) {
+				chars.reset();
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Gives the static resources listed in the ETag manifest written by
+ * build-standalone strong ETags based on their content, so they stay the same
+ * across restarts and redeployments of the same files, and answers matching
+ * If-None-Match requests with a 304 without involving the default servlet.
+ * The containers' own size/time ETags are suppressed. When the default servlet
+ * serves precompressed siblings (the .gz files from the 'precompress' build option,
+ * or .br files the application ships) the digest of the variant it will send is
+ * used, chosen the way the default servlet chooses it, so each body has its own
+ * strong ETag, and responses for resources with siblings vary by Accept-Encoding.
+ * <p>
+ * Uses only the servlet 2.5 API, so it works with Tomcat and Jetty.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+public class StaticEtagFilter implements Filter {
+
+	protected static final String[] NO_ENCODINGS = new String[0];
+
+	protected final Map<String, String> etags;
+	protected final String cacheControl;
+	protected final String[] encodings;
+
+	/**
+	 * @param etags the digests by path, e.g. '/css/main.css'
+	 * @param cacheControl the Cache-Control header for the resources, or null to leave it unset
+	 * @param encodings the encodings ('br', 'gzip') whose precompressed siblings the default
+	 * servlet serves, in its order of preference, or null if it serves none
+	 */
+	public StaticEtagFilter(Map<String, String> etags, String cacheControl, String[] encodings) {
+		this.etags = etags;
+		this.cacheControl = cacheControl == null || cacheControl.length() == 0 ? null : cacheControl;
+		this.encodings = encodings == null ? NO_ENCODINGS : encodings;
+	}
+
+	public void init(FilterConfig filterConfig) {
+		// nothing to do
+	}
+
+	public void destroy() {
+		// nothing to do
+	}
+
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		if (!(req instanceof HttpServletRequest) || !(res instanceof HttpServletResponse)) {
+			chain.doFilter(req, res);
+			return;
+		}
+
+		HttpServletRequest request = (HttpServletRequest) req;
+		HttpServletResponse response = (HttpServletResponse) res;
+		String method = request.getMethod();
+		String path = request.getServletPath();
+		if (request.getPathInfo() != null) {
+			path += request.getPathInfo();
+		}
+		String etag = "GET".equals(method) || "HEAD".equals(method) ? findEtag(request, path) : null;
+		if (etag == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		response.setHeader("ETag", etag);
+		if (cacheControl != null) {
+			response.setHeader("Cache-Control", cacheControl);
+		}
+		if (hasPrecompressed(path)) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+
+		if (matches(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		chain.doFilter(request, new HttpServletResponseWrapper(response) {
+			@Override
+			public void setHeader(String name, String value) {
+				if (!isContainerHeader(name)) {
+					super.setHeader(name, value);
+				}
+			}
+
+			@Override
+			public void addHeader(String name, String value) {
+				if (!isContainerHeader(name)) {
+					super.addHeader(name, value);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the quoted ETag of the resource the request is for, or null if it's not in the manifest
+	 */
+	protected String findEtag(HttpServletRequest request, String path) {
+		String digest = null;
+		if (hasPrecompressed(path)) {
+			String encoding = selectEncoding(request, path);
+			if (encoding != null) {
+				digest = etags.get(path + getExtension(encoding));
+			}
+		}
+		if (digest == null) {
+			digest = etags.get(path);
+		}
+		return digest == null ? null : '"' + digest + '"';
+	}
+
+	protected boolean hasPrecompressed(String path) {
+		for (String encoding : encodings) {
+			if (etags.containsKey(path + getExtension(encoding))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Chooses the precompressed variant the way Tomcat's default servlet does: the
+	 * encoding with the highest quality in Accept-Encoding that has a sibling, the
+	 * first one listed on a tie, and the first sibling in preference order for '*'.
+	 *
+	 * @return the encoding of the variant that will be sent, or null for the resource itself
+	 */
+	protected String selectEncoding(HttpServletRequest request, String path) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return null;
+		}
+
+		String best = null;
+		double bestQuality = 0;
+		for (String preference : acceptEncoding.split(",")) {
+			if (bestQuality >= 1) {
+				break;
+			}
+
+			String encoding = preference;
+			double quality = 1;
+			int semicolon = preference.indexOf(';');
+			if (semicolon > 0) {
+				encoding = preference.substring(0, semicolon);
+				int equals = preference.indexOf('=', semicolon + 1);
+				if (equals == -1) {
+					continue;
+				}
+				try {
+					quality = Double.parseDouble(preference.substring(equals + 1).trim());
+				}
+				catch (NumberFormatException e) {
+					continue;
+				}
+			}
+			if (quality <= bestQuality) {
+				continue;
+			}
+
+			encoding = encoding.trim();
+			if (encoding.equals("identity")) {
+				best = null;
+				bestQuality = quality;
+				continue;
+			}
+			for (String served : encodings) {
+				if ((encoding.equals("*") || encoding.equals(served)) && etags.containsKey(path + getExtension(served))) {
+					best = served;
+					bestQuality = quality;
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	protected String getExtension(String encoding) {
+		return "gzip".equals(encoding) ? ".gz" : "." + encoding;
+	}
+
+	/**
+	 * If-None-Match uses the weak comparison, so W/ prefixes are ignored.
+	 */
+	protected boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The default servlets set their own ETag, and the Cache-Control set here wins.
+	 */
+	protected boolean isContainerHeader(String name) {
+		return "ETag".equalsIgnoreCase(name) || (cacheControl != null && "Cache-Control".equalsIgnoreCase(name));
+	}
+}
@@ -14,6 +14,12 @@
  */
 package grails.plugin.standalone
 
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
 import junit.framework.TestCase
 import spock.lang.Specification
 
@@ -38,11 +44,307 @@ class AbstractLauncherSpec extends Specification {
 
 		then:
 		classFile.exists()
+		Math.abs(classFile.lastModified() - entryTime(jar, 'junit/framework/TestCase.class')) < 1000
+
+		cleanup:
+		extractionDir?.deleteDir()
+	}
+
+	void testExtractWarParallel() {
+		given:
+		launcher = createLauncher(['extractThreads=4'])
+		File jar = new File(TestCase.protectionDomain.codeSource.location.toString() - 'file:')
+
+		when:
+		File extractionDir = launcher.extractWar(new FileInputStream(jar),
+			File.createTempFile('embedded', '.war', new File(System.getProperty('java.io.tmpdir'))).absoluteFile)
+
+		then:
+		new File(extractionDir, 'junit/framework/TestCase.class').exists()
+		new File(extractionDir, 'META-INF/MANIFEST.MF').exists()
 
 		cleanup:
 		extractionDir?.deleteDir()
 	}
 
+	void testExtractionCache() {
+		given:
+		File workDir = createTempDir()
+		File jar = new File(TestCase.protectionDomain.codeSource.location.toString() - 'file:')
+		launcher = new AbstractLauncher(['extractionCache=true', 'workDir=' + workDir.path] as String[]) {
+			protected void start(File exploded) {}
+			protected InputStream getResourceAsStream(String name) {
+				name == 'embedded.war' ? new FileInputStream(jar) : null
+			}
+		}
+
+		when:
+		File first = launcher.extractWar()
+		File second = launcher.extractWar()
+
+		then:
+		first == second
+		first.parentFile.name == 'standalone-war-cache'
+		new File(first, 'junit/framework/TestCase.class').exists()
+		launcher.isCompleteExtraction(first, first.name)
+
+		when: 'the application writes to its docBase'
+		new File(first, 'uploads/avatar.png').with { parentFile.mkdirs(); text = 'png' }
+
+		then:
+		launcher.isCompleteExtraction(first, first.name)
+
+		when:
+		new File(first, 'junit').deleteDir()
+
+		then:
+		!launcher.isCompleteExtraction(first, first.name)
+		new File(launcher.extractWar(), 'junit/framework/TestCase.class').exists()
+
+		cleanup:
+		workDir?.deleteDir()
+	}
+
+	void testPackedWarCache() {
+		given:
+		File workDir = createTempDir()
+		File jar = new File(TestCase.protectionDomain.codeSource.location.toString() - 'file:')
+		launcher = new AbstractLauncher(['explodeWar=false', 'workDir=' + workDir.path] as String[]) {
+			protected void start(File exploded) {}
+			protected InputStream getResourceAsStream(String name) {
+				name == 'embedded.war' ? new FileInputStream(jar) : null
+			}
+		}
+
+		when:
+		File war = launcher.extractPackedWar()
+
+		then:
+		war.parentFile.name == 'standalone-war-cache'
+		war.name ==~ /[0-9a-f]{40}\.war/
+		war.bytes == jar.bytes
+		!war.parentFile.list().any { it.contains('.staging-') }
+
+		when: 'a later launch reuses the copy'
+		war.bytes = 'cached'.bytes
+		File second = launcher.extractPackedWar()
+
+		then:
+		second == war
+		second.text == 'cached'
+		launcher.extractionCached
+
+		cleanup:
+		workDir?.deleteDir()
+	}
+
+	void testCollectGarbage() {
+		given:
+		File workDir = createTempDir()
+		launcher = createLauncher(['workDir=' + workDir.path, 'extractionCacheRetain=2'])
+		File leftover = new File(workDir, 'standalone-war/embedded-exploded-1/WEB-INF/web.xml')
+		leftover.parentFile.mkdirs()
+		leftover.text = '<web-app/>'
+		File unrelated = new File(workDir, '.other.trash-1')
+		unrelated.mkdirs()
+		File cacheDir = new File(workDir, 'standalone-war-cache')
+		List<File> entries = (1..4).collect { int i ->
+			File entry = new File(cacheDir, ('' + i) * 40)
+			new File(entry, 'index.html').with { parentFile.mkdirs(); text = 'x' * 100 }
+			entry.lastModified = System.currentTimeMillis() - i * 60000
+			entry
+		}
+
+		when: 'this server uses the oldest entry'
+		launcher.lockCacheEntry(entries[3].name)
+		File trash = launcher.moveAside(new File(workDir, 'standalone-war'))
+		launcher.collectGarbage()?.join()
+
+		then:
+		trash.name.startsWith('.standalone-war.trash-')
+		!trash.exists()
+		!new File(workDir, 'standalone-war').exists()
+		unrelated.exists()
+		entries[0].exists()
+		entries[1].exists()
+		!entries[2].exists()
+		entries[3].exists()
+		cacheDir.list().findAll { it != '.locks' }.size() == 3
+
+		cleanup:
+		workDir?.deleteDir()
+	}
+
+	void testExplodeStream() {
+		given:
+		File jar = new File(TestCase.protectionDomain.codeSource.location.toString() - 'file:')
+		File explodedDir = new File(createTempDir(), 'exploded')
+
+		when:
+		launcher.explode(new FileInputStream(jar), explodedDir)
+
+		then:
+		new File(explodedDir, 'junit/framework/TestCase.class').exists()
+		Math.abs(new File(explodedDir, 'junit/framework/TestCase.class').lastModified() -
+				entryTime(jar, 'junit/framework/TestCase.class')) < 1000
+
+		cleanup:
+		explodedDir?.parentFile?.deleteDir()
+	}
+
+	void testOpenEmbeddedWarIsBoundedToTheEntry() {
+		given:
+		File dir = createTempDir()
+		File zip = new File(dir, 'launcher.jar')
+		byte[] war = new File(TestCase.protectionDomain.codeSource.location.toString() - 'file:').bytes
+		createStoredZip(zip, ['embedded.war': war, 'after.txt': 'after the war'.bytes])
+		launcher = new AbstractLauncher([] as String[]) {
+			protected void start(File exploded) {}
+			protected File getLauncherJar() { zip }
+		}
+
+		when:
+		byte[] read = launcher.openEmbeddedWar().bytes
+		File explodedDir = launcher.explode(launcher.openEmbeddedWar(), new File(dir, 'exploded'))
+
+		then:
+		read == war
+		new File(explodedDir, 'junit/framework/TestCase.class').length() > 0
+
+		cleanup:
+		dir?.deleteDir()
+	}
+
+	void testFindStoredEntry() {
+		given:
+		File dir = createTempDir()
+		File zip = new File(dir, 'outer.zip')
+		byte[] content = 'stored content'.bytes
+		createStoredZip(zip, ['embedded.war': content], ['compressed.txt': 'compressed content'.bytes])
+
+		when:
+		long[] region = launcher.findStoredEntry(zip, 'embedded.war')
+		RandomAccessFile file = new RandomAccessFile(zip, 'r')
+		byte[] read = new byte[(int) region[1]]
+		file.seek(region[0])
+		file.readFully(read)
+		file.close()
+
+		then:
+		read == content
+		launcher.findStoredEntry(zip, 'compressed.txt') == null
+		launcher.findStoredEntry(zip, 'missing') == null
+
+		cleanup:
+		dir?.deleteDir()
+	}
+
+	void testChildJvmOptions() {
+		given:
+		File dir = createTempDir()
+		File jar = new File(dir, 'standalone.jar')
+		def manifest = new java.util.jar.Manifest()
+		manifest.mainAttributes.putValue 'Manifest-Version', '1.0'
+		manifest.mainAttributes.putValue 'Main-Class', 'com.example.CustomLauncher'
+		new java.util.jar.JarOutputStream(new FileOutputStream(jar), manifest).close()
+
+		expect:
+		launcher.getMainClass(jar) == 'com.example.CustomLauncher'
+		launcher.isExclusiveJvmOption('-agentlib:jdwp=transport=dt_socket,server=y,address=5005')
+		launcher.isExclusiveJvmOption('-javaagent:/opt/agent.jar')
+		launcher.isExclusiveJvmOption('-Dcom.sun.management.jmxremote.port=9010')
+		!launcher.isExclusiveJvmOption('-Xmx512m')
+		!launcher.isExclusiveJvmOption('-Dgrails.env=production')
+
+		cleanup:
+		dir?.deleteDir()
+	}
+
+	void testShutdownTokenFile() {
+		given:
+		File workDir = createTempDir()
+		launcher = createLauncher(['workDir=' + workDir.path])
+		File dir = new File(workDir, 'standalone-shutdown-8081')
+
+		when:
+		String token = launcher.getShutdownToken(8081)
+
+		then:
+		token ==~ /[0-9a-f]{32}/
+		new File(dir, 'token').text == token
+		permissions(dir) == 'rwx------'
+		permissions(new File(dir, 'token')) == 'rw-------'
+
+		when: 'a directory that can\'t be replaced is already there'
+		new File(dir, 'other').text = ''
+		launcher.getShutdownToken(8081)
+
+		then:
+		thrown IOException
+		new File(dir, 'other').exists()
+
+		cleanup:
+		workDir?.deleteDir()
+	}
+
+	void testCopy() {
+		given:
+		launcher = createLauncher(['bufferSize=1'])
+		File dir = createTempDir()
+		File source = new File(dir, 'source.bin')
+		byte[] content = new byte[5000]
+		new Random(42).nextBytes(content)
+		source.bytes = content
+
+		when: 'file to file uses the channels'
+		File channelCopy = new File(dir, 'channel.bin')
+		launcher.copy(new FileInputStream(source), new FileOutputStream(channelCopy))
+
+		and: 'anything else uses the 1kB buffer'
+		File streamCopy = new File(dir, 'stream.bin')
+		launcher.copy(new ByteArrayInputStream(content), new FileOutputStream(streamCopy), content.length)
+
+		and: 'the fallback when transferTo makes no progress'
+		File regionCopy = new File(dir, 'region.bin')
+		RandomAccessFile input = new RandomAccessFile(source, 'r')
+		RandomAccessFile output = new RandomAccessFile(regionCopy, 'rw')
+		long copied = launcher.copyRegion(input.channel, 100, 4000, output.channel)
+		input.close()
+		output.close()
+
+		then:
+		launcher.bufferSize == 1024
+		channelCopy.bytes == content
+		streamCopy.bytes == content
+		copied == 4000
+		regionCopy.bytes == content[100..<4100] as byte[]
+
+		cleanup:
+		dir?.deleteDir()
+	}
+
+	void testCopyEmbeddedWar() {
+		given:
+		File dir = createTempDir()
+		File jar = new File(dir, 'launcher.jar')
+		byte[] war = ('not really a war' * 100).bytes
+		createStoredZip(jar, ['embedded.war': war], ['before.txt': 'before the war'.bytes])
+		launcher = new AbstractLauncher(['bufferSize=8'] as String[]) {
+			protected void start(File exploded) {}
+			protected File getLauncherJar() { jar }
+		}
+
+		when:
+		File copy = new File(dir, 'copy.war')
+		launcher.copyEmbeddedWar(copy)
+
+		then:
+		copy.bytes == war
+
+		cleanup:
+		dir?.deleteDir()
+	}
+
 	void testHasLength() {
 		expect:
 		!launcher.hasLength(null)
@@ -124,6 +426,41 @@ class AbstractLauncherSpec extends Specification {
 		!launcher.getBooleanArg('m1', false)
 	}
 
+	private long entryTime(File jar, String name) {
+		def zip = new java.util.zip.ZipFile(jar)
+		try {
+			zip.getEntry(name).time
+		}
+		finally {
+			zip.close()
+		}
+	}
+
+	private String permissions(File file) {
+		PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()))
+	}
+
+	/**
+	 * Writes the entries uncompressed, as build-standalone stores the war, after
+	 * any compressed ones.
+	 */
+	private void createStoredZip(File zip, Map<String, byte[]> entries, Map<String, byte[]> compressedEntries = [:]) {
+		ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zip))
+		compressedEntries.each { String name, byte[] content ->
+			zipOutputStream.putNextEntry(new ZipEntry(name))
+			zipOutputStream.write(content)
+		}
+		entries.each { String name, byte[] content ->
+			ZipEntry entry = new ZipEntry(name)
+			entry.method = ZipEntry.STORED
+			entry.size = content.length
+			entry.crc = new CRC32().with { update(content); value }
+			zipOutputStream.putNextEntry(entry)
+			zipOutputStream.write(content)
+		}
+		zipOutputStream.close()
+	}
+
 	private File createTempDir() {
 		File tempDir = new File(System.getProperty('java.io.tmpdir'))
 		int index = 1
@@ -0,0 +1,180 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for AsyncAccessLogWriter.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class AsyncAccessLogWriterSpec extends Specification {
+
+	private File dir = File.createTempFile('access-log', '')
+
+	void setup() {
+		dir.delete()
+		dir.mkdirs()
+	}
+
+	void cleanup() {
+		dir.deleteDir()
+	}
+
+	void testWritesCombinedFormatWithDuration() {
+		given:
+		File file = new File(dir, 'access.log')
+		AsyncAccessLogWriter writer = new AsyncAccessLogWriter(file, 16, 0, 0)
+		writer.start()
+
+		when:
+		log writer, '/app/book', 'id=3', 200, 5120, 'curl/7.47.0 "quoted"'
+		log writer, '/app/missing', null, 404, 0, null
+		writer.stop()
+		List<String> lines = file.readLines()
+
+		then:
+		lines.size() == 2
+		lines[0] ==~ /127\.0\.0\.1 - - \[\d\d\/\w{3}\/\d{4}:\d\d:\d\d:\d\d [+-]\d{4}\] "GET \/app\/book\?id=3 HTTP\/1\.1" 200 5120 "-" "curl\/7\.47\.0 \\"quoted\\"" 12/
+		lines[1].endsWith '"GET /app/missing HTTP/1.1" 404 - "-" "-" 12'
+		writer.written == 2
+		writer.dropped == 0
+	}
+
+	void testDropsWhenFullAndRotatesBySize() {
+		given:
+		File file = new File(dir, 'access.log')
+		AsyncAccessLogWriter writer = new AsyncAccessLogWriter(file, 2, 100, 0)
+
+		when: 'the writer thread is not running, so only 2 entries are available'
+		3.times { log writer, '/app/page', null, 200, 10, 'agent' }
+
+		then:
+		writer.dropped == 1
+
+		when:
+		writer.start()
+		writer.stop()
+
+		then:
+		writer.written == 2
+		dir.listFiles().findAll { it.name.startsWith('access.log.') }.size() == 1
+		file.length() == 0
+	}
+
+	void testReturnsEachEntryOnceWhenWritingFails() {
+		given:
+		File file = new File(dir, 'access.log')
+		boolean failing = true
+		AsyncAccessLogWriter writer = new AsyncAccessLogWriter(file, 4, 0, 0) {
+			@Override
+			protected void open() throws IOException {
+				super.open()
+				Writer fileWriter = writer
+				writer = new FilterWriter(fileWriter) {
+					@Override
+					void write(char[] chars, int offset, int length) throws IOException {
+						if (failing) {
+							throw new IOException('disk full')
+						}
+						super.write(chars, offset, length)
+					}
+				}
+			}
+		}
+		writer.start()
+
+		when: 'a batch fails'
+		4.times { log writer, '/app/page', null, 200, 10, 'agent' }
+		waitFor { writer.dropped == 4 && writer.free.size() == 4 }
+
+		then: 'all the entries are free again, once each'
+		writer.written == 0
+		writer.free.collect { System.identityHashCode(it) }.unique().size() == 4
+		writer.batch.empty
+
+		when: 'the file can be written again'
+		failing = false
+		2.times { log writer, '/app/page', null, 200, 10, 'agent' }
+		writer.stop()
+
+		then:
+		writer.written == 2
+		writer.free.size() == 4
+		file.readLines().size() == 2
+	}
+
+	void testRotatesAfterAFailedFlush() {
+		given: 'a file that only fails to flush once, after a line that fills it was counted'
+		File file = new File(dir, 'access.log')
+		boolean failed = false
+		AsyncAccessLogWriter writer = new AsyncAccessLogWriter(file, 4, 50, 0) {
+			@Override
+			protected void open() throws IOException {
+				super.open()
+				writer = new FilterWriter(writer) {
+					@Override
+					void flush() throws IOException {
+						if (!failed) {
+							failed = true
+							throw new IOException('disk full')
+						}
+						super.flush()
+					}
+				}
+			}
+		}
+		writer.start()
+
+		when:
+		log writer, '/app/page', null, 200, 10, 'agent'
+		waitFor { dir.listFiles().any { it.name.startsWith('access.log.') } }
+		boolean alive = writer.thread.alive
+		log writer, '/app/page', null, 200, 10, 'agent'
+		writer.stop()
+
+		then:
+		failed
+		alive
+		dir.listFiles().findAll { it.name.startsWith('access.log') }.sum { it.readLines().size() } == 2
+		writer.free.size() == 4
+	}
+
+	private void waitFor(Closure<Boolean> condition) {
+		long deadline = System.currentTimeMillis() + 5000
+		while (!condition() && System.currentTimeMillis() < deadline) {
+			sleep 10
+		}
+	}
+
+	private void log(AsyncAccessLogWriter writer, String uri, String query, int status, long bytes, String userAgent) {
+		AsyncAccessLogWriter.Entry entry = writer.acquire()
+		if (!entry) {
+			return
+		}
+		entry.timestamp = System.currentTimeMillis()
+		entry.durationMillis = 12
+		entry.status = status
+		entry.bytes = bytes
+		entry.remoteAddr = '127.0.0.1'
+		entry.method = 'GET'
+		entry.uri = uri
+		entry.query = query
+		entry.protocol = 'HTTP/1.1'
+		entry.userAgent = userAgent
+		writer.publish entry
+	}
+}
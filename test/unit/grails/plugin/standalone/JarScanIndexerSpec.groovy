@@ -0,0 +1,128 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for JarScanIndexer.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class JarScanIndexerSpec extends Specification {
+
+	private File war = File.createTempFile('index', '.war')
+
+	void cleanup() {
+		war.delete()
+	}
+
+	void testIndexesOnlyJarsThatNeedScanning() {
+		given:
+		writeWar(
+			'sci.jar': [(JarScanIndexer.INITIALIZER_SERVICES): 'com.example.ExampleInitializer\n',
+			            'com/example/ExampleInitializer.class': classFile('javax/servlet/ServletContainerInitializer')],
+			'servlets.jar': ['com/example/ExampleServlet.class': classFile('Ljavax/servlet/annotation/WebServlet;')],
+			'taglib.jar': ['META-INF/example.tld': '<taglib/>'],
+			'fragment.jar': ['META-INF/web-fragment.xml': '<web-fragment/>'],
+			'plain.jar': ['com/example/Plain.class': classFile('java/lang/Object')])
+
+		when:
+		JarScanIndexer indexer = new JarScanIndexer()
+		Properties index = indexer.index(war)
+
+		then:
+		indexer.jarCount == 5
+		index.tldScan == 'taglib.jar'
+		index.fragmentScan == 'fragment.jar'
+		index.pluggabilityScan.split(',') as Set == ['sci.jar', 'servlets.jar', 'fragment.jar'] as Set
+		!indexer.initializersWithHandlesTypes
+	}
+
+	void testHandlesTypesKeepsTheFullPluggabilityScan() {
+		given: 'an initializer that declares @HandlesTypes, and its handled type implemented in another jar'
+		writeWar(
+			'sci.jar': [(JarScanIndexer.INITIALIZER_SERVICES): '# comment\ncom.example.ExampleInitializer # trailing\n',
+			            'com/example/ExampleInitializer.class': classFile('Ljavax/servlet/annotation/HandlesTypes;'),
+			            'com/example/WebInitializer.class': classFile('java/lang/Object')],
+			'app-init.jar': ['com/example/app/AppInitializer.class': classFile('com/example/WebInitializer')],
+			'taglib.jar': ['META-INF/example.tld': '<taglib/>'],
+			'resources.jar': ['META-INF/resources/app.js': ''])
+
+		when:
+		JarScanIndexer indexer = new JarScanIndexer()
+		Properties index = indexer.index(war)
+
+		then:
+		indexer.initializersWithHandlesTypes == ['com.example.ExampleInitializer']
+		index.tldScan == 'taglib.jar'
+		!index.containsKey('pluggabilityScan')
+
+		and: 'servers that only scan for TLDs and fragments still get their list'
+		index.fragmentScan == 'resources.jar'
+	}
+
+	void testHandlesTypesInWebInfClasses() {
+		given:
+		writeWar(
+			('WEB-INF/classes/' + JarScanIndexer.INITIALIZER_SERVICES): 'com.example.AppInitializer',
+			'WEB-INF/classes/com/example/AppInitializer.class': classFile('Ljavax/servlet/annotation/HandlesTypes;'),
+			'plain.jar': ['com/example/Plain.class': classFile('java/lang/Object')])
+
+		expect:
+		!new JarScanIndexer().index(war).containsKey('pluggabilityScan')
+	}
+
+	/**
+	 * Map values are jars (maps of entries) written to WEB-INF/lib, or the content of other entries.
+	 */
+	private void writeWar(Map<String, Object> entries) {
+		war.withOutputStream { OutputStream out ->
+			ZipOutputStream zip = new ZipOutputStream(out)
+			entries.each { String name, content ->
+				if (content instanceof Map) {
+					zip.putNextEntry new ZipEntry('WEB-INF/lib/' + name)
+					zip.write jar(content)
+				}
+				else {
+					zip.putNextEntry new ZipEntry(name)
+					zip.write content instanceof byte[] ? content : content.toString().bytes
+				}
+			}
+			zip.close()
+		}
+	}
+
+	private byte[] jar(Map<String, Object> entries) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+		ZipOutputStream zip = new ZipOutputStream(bytes)
+		entries.each { String name, content ->
+			zip.putNextEntry new ZipEntry(name)
+			zip.write content instanceof byte[] ? content : content.toString().bytes
+		}
+		zip.close()
+		bytes.toByteArray()
+	}
+
+	/**
+	 * Only the constant pool strings matter to the indexer.
+	 */
+	private byte[] classFile(String reference) {
+		('\u00CA\u00FE\u00BA\u00BE' + reference).getBytes('ISO-8859-1')
+	}
+}
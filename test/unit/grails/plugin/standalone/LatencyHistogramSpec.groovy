@@ -0,0 +1,78 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for LatencyHistogram.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class LatencyHistogramSpec extends Specification {
+
+	private LatencyHistogram histogram = new LatencyHistogram()
+
+	void testCountsByStatusClass() {
+		when:
+		histogram.record 200, millis(3)
+		histogram.record 204, millis(30)
+		histogram.record 404, millis(1)
+		histogram.record 503, millis(20000)
+		long[] snapshot = histogram.snapshot()
+
+		then:
+		LatencyHistogram.count(snapshot, 2) == 2
+		LatencyHistogram.count(snapshot, 3) == 0
+		LatencyHistogram.count(snapshot, 4) == 1
+		LatencyHistogram.count(snapshot, 5) == 1
+	}
+
+	void testQuantiles() {
+		when:
+		90.times { histogram.record 200, millis(4) }
+		10.times { histogram.record 200, millis(400) }
+		long[] snapshot = histogram.snapshot()
+
+		then:
+		LatencyHistogram.quantileMillis(snapshot, 0.5) == 5
+		LatencyHistogram.quantileMillis(snapshot, 0.9) == 5
+		LatencyHistogram.quantileMillis(snapshot, 0.99) == 500
+		LatencyHistogram.quantileMillis(new long[snapshot.length], 0.5) == -1
+	}
+
+	void testWritePrometheus() {
+		given:
+		histogram.record 200, millis(3)
+		histogram.record 200, millis(60000)
+		StringBuilder out = new StringBuilder()
+
+		when:
+		histogram.writePrometheus out, 'request_seconds', 'Request latency'
+		String text = out.toString()
+
+		then:
+		text.contains '# TYPE request_seconds histogram'
+		text.contains 'request_seconds_bucket{status="2xx",le="0.002"} 0'
+		text.contains 'request_seconds_bucket{status="2xx",le="0.005"} 1'
+		text.contains 'request_seconds_bucket{status="2xx",le="+Inf"} 2'
+		text.contains 'request_seconds_count{status="2xx"} 2'
+		text.contains 'request_seconds_count{status="5xx"} 0'
+	}
+
+	private long millis(long millis) {
+		millis * 1000000
+	}
+}
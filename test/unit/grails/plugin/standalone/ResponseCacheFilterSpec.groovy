@@ -0,0 +1,145 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import javax.servlet.FilterChain
+import javax.servlet.ServletOutputStream
+import javax.servlet.WriteListener
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for ResponseCacheFilter.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class ResponseCacheFilterSpec extends Specification {
+
+	private cache = RuntimeClasses.load('grails.plugin.standalone.ResponseCache').newInstance(1024 * 1024, 1024)
+	private filter = RuntimeClasses.load('grails.plugin.standalone.ResponseCacheFilter').newInstance(cache, 10000, false)
+
+	void testCachesCacheableResponses() {
+		given:
+		int calls = 0
+		FilterChain chain = chain { HttpServletResponse response ->
+			calls++
+			response.setHeader 'Cache-Control', 'max-age=60'
+			response.outputStream.write 'cached'.bytes
+		}
+
+		when:
+		String first = get('/page', chain)
+		String second = get('/page', chain)
+
+		then:
+		first == 'cached'
+		second == 'cached'
+		calls == 1
+		cache.hits == 1
+		cache.isCacheable('http://localhost/page')
+	}
+
+	void testDoesNotMakeRequestsForUncacheableUrlsWait() {
+		given: 'the URL is known to be uncacheable'
+		get '/account', chain { HttpServletResponse response -> response.outputStream.write 'private'.bytes }
+
+		and: 'a chain that only returns once two requests are in it at the same time'
+		CountDownLatch inChain = new CountDownLatch(2)
+		List<Boolean> concurrent = [].asSynchronized()
+		FilterChain chain = chain { HttpServletResponse response ->
+			inChain.countDown()
+			concurrent << inChain.await(5, TimeUnit.SECONDS)
+			response.outputStream.write 'private'.bytes
+		}
+
+		when:
+		List<Thread> threads = (1..2).collect { Thread.start { get '/account', chain } }
+		threads*.join()
+
+		then:
+		!cache.isCacheable('http://localhost/account')
+		concurrent == [true, true]
+		cache.coalesced == 0
+		cache.entryCount == 0
+	}
+
+	void testCoalescesMissesForCacheableUrls() {
+		given: 'the URL is known to be cacheable'
+		FilterChain cacheable = chain { HttpServletResponse response ->
+			response.setHeader 'Cache-Control', 'max-age=60'
+			response.setHeader 'Vary', 'Accept-Language'
+			response.outputStream.write 'en'.bytes
+		}
+		get '/catalog', cacheable, ['accept-language': 'en']
+
+		and:
+		CountDownLatch started = new CountDownLatch(1)
+		CountDownLatch release = new CountDownLatch(1)
+		int calls = 0
+		FilterChain slow = chain { HttpServletResponse response ->
+			calls++
+			started.countDown()
+			release.await 5, TimeUnit.SECONDS
+			response.setHeader 'Cache-Control', 'max-age=60'
+			response.setHeader 'Vary', 'Accept-Language'
+			response.outputStream.write 'de'.bytes
+		}
+
+		when:
+		List<String> bodies = [].asSynchronized()
+		Thread producer = Thread.start { bodies << get('/catalog', slow, ['accept-language': 'de']) }
+		started.await 5, TimeUnit.SECONDS
+		Thread waiter = Thread.start { bodies << get('/catalog', slow, ['accept-language': 'de']) }
+		sleep 200
+		release.countDown()
+		[producer, waiter]*.join()
+
+		then:
+		bodies == ['de', 'de']
+		calls == 1
+		cache.coalesced + cache.hits == 1
+	}
+
+	private FilterChain chain(Closure respond) {
+		RuntimeClasses.stub(FilterChain, [doFilter: { request, response -> respond response }])
+	}
+
+	/**
+	 * @return the response body
+	 */
+	private String get(String uri, FilterChain chain, Map<String, String> headers = [:]) {
+		HttpServletRequest request = RuntimeClasses.stub(HttpServletRequest, [
+			getMethod: { -> 'GET' },
+			getRequestURL: { -> new StringBuffer('http://localhost' + uri) },
+			getHeader: { String name -> headers[name.toLowerCase()] }])
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream()
+		ServletOutputStream outputStream = new ServletOutputStream() {
+			void write(int b) { body.write b }
+			boolean isReady() { true }
+			void setWriteListener(WriteListener writeListener) {}
+		}
+		HttpServletResponse response = RuntimeClasses.stub(HttpServletResponse, [
+			getOutputStream: { -> outputStream }])
+
+		filter.doFilter request, response, chain
+		new String(body.toByteArray())
+	}
+}
@@ -0,0 +1,133 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for ResponseCache.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class ResponseCacheSpec extends Specification {
+
+	void testEvictsLeastRecentlyUsed() {
+		given:
+		ResponseCache cache = new ResponseCache(3000, 2000)
+		long now = System.currentTimeMillis()
+
+		when:
+		cache.put 'a', ResponseCache.NO_VARY, 'a', entry(1000, now)
+		cache.put 'b', ResponseCache.NO_VARY, 'b', entry(1000, now)
+		cache.get 'a', now
+		cache.put 'c', ResponseCache.NO_VARY, 'c', entry(1000, now)
+
+		then:
+		cache.get('a', now)
+		!cache.get('b', now)
+		cache.get('c', now)
+		cache.evictions == 1
+		cache.size <= 3000
+
+		when: 'too large, or expired'
+		cache.put 'd', ResponseCache.NO_VARY, 'd', entry(2001, now)
+
+		then:
+		!cache.get('d', now)
+		!cache.get('a', now + 61000)
+	}
+
+	void testVariants() {
+		given:
+		ResponseCache cache = new ResponseCache(10000, 1000)
+		String[] vary = ['accept-language']
+		long now = System.currentTimeMillis()
+
+		when:
+		cache.put '/page', vary, cache.variantKey('/page', ['en'] as String[]), entry(10, now)
+
+		then:
+		cache.getVary('/page') == vary
+		cache.get(cache.variantKey('/page', ['en'] as String[]), now)
+		!cache.get(cache.variantKey('/page', ['de'] as String[]), now)
+		!cache.get(cache.variantKey('/page', [null] as String[]), now)
+	}
+
+	void testUrlRecordsAreEvictedWithTheirLastResponse() {
+		given:
+		ResponseCache cache = new ResponseCache(5000, 1000)
+		String[] vary = ['accept-language']
+		long now = System.currentTimeMillis()
+
+		when: 'far more URLs than fit'
+		1000.times { int i ->
+			cache.put "/page/$i", vary, cache.variantKey("/page/$i", ['en'] as String[]), entry(10, now)
+		}
+
+		then:
+		cache.urls.size() < 50
+		cache.size <= 5000
+		cache.getVary('/page/999') == vary
+		cache.getVary('/page/0') == ResponseCache.NO_VARY
+
+		when: 'a URL keeps its record while it has a response'
+		cache.put '/other', vary, cache.variantKey('/other', ['de'] as String[]), entry(10, now)
+		cache.get cache.variantKey('/page/999', ['en'] as String[]), now + 61000
+
+		then:
+		cache.urls['/page/999'].variants == 0
+		cache.urls['/other'].variants == 1
+	}
+
+	void testCoalescesMisses() {
+		given:
+		ResponseCache cache = new ResponseCache(10000, 1000)
+
+		expect:
+		cache.joinMiss('k') == null
+		cache.joinMiss('k').count == 1
+
+		when:
+		def latch = cache.joinMiss('k')
+		cache.finishMiss 'k'
+
+		then:
+		latch.count == 0
+		cache.joinMiss('k') == null
+	}
+
+	@Unroll
+	void 'max age of "#cacheControl" is #maxAge'() {
+		expect:
+		ResponseCache.getMaxAge(cacheControl) == maxAge
+
+		where:
+		cacheControl                      | maxAge
+		null                              | -1
+		'public'                          | -1
+		'max-age=60'                      | 60
+		'public, max-age=60, s-maxage=5'  | 5
+		'max-age=0'                       | -1
+		'private, max-age=60'             | -1
+		'no-store'                        | -1
+		'no-cache, max-age=60'            | -1
+		'max-age="30"'                    | 30
+	}
+
+	private ResponseCache.Entry entry(int size, long now) {
+		new ResponseCache.Entry(200, 'text/plain', [], new byte[size], now, now + 60000)
+	}
+}
@@ -0,0 +1,100 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+
+import groovy.transform.CompileStatic
+
+import javax.servlet.http.HttpServletRequest
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+
+/**
+ * The classes in src/runtime are only compiled by build-standalone, so tests
+ * compile the ones that only need the servlet API themselves.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class RuntimeClasses {
+
+	private static File dir
+	private static ClassLoader runtimeLoader
+
+	/**
+	 * Loads a class from src/runtime, compiling it if necessary, or from src/java.
+	 * Both are loaded by the same class loader since the runtime classes use the
+	 * launcher classes' protected members.
+	 */
+	static synchronized Class load(String name) {
+		if (!runtimeLoader) {
+			dir = File.createTempFile('runtime', '')
+			dir.delete()
+			dir.mkdirs()
+			URL[] urls = [dir.toURI().toURL(), ResponseCache.protectionDomain.codeSource.location]
+			runtimeLoader = new PluginFirstClassLoader(urls, RuntimeClasses.classLoader)
+		}
+
+		File source = new File('src/runtime/' + name.replace('.', '/') + '.java')
+		if (source.exists() && !new File(dir, name.replace('.', '/') + '.class').exists()) {
+			String classpath = [HttpServletRequest, ResponseCache].collect {
+				new File(it.protectionDomain.codeSource.location.toURI()).path
+			}.join(File.pathSeparator)
+			JavaCompiler compiler = ToolProvider.systemJavaCompiler
+			assert compiler.run(null, null, null, '-nowarn', '-d', dir.path, '-cp', classpath, source.path) == 0
+		}
+		runtimeLoader.loadClass(name)
+	}
+
+	/**
+	 * @return an instance of the interface that calls the closure for each implemented
+	 * method, and returns null, false or 0 for the others
+	 */
+	static <T> T stub(Class<T> type, Map<String, Closure> methods) {
+		InvocationHandler handler = { Object proxy, Method method, Object[] args ->
+			Closure implementation = methods[method.name]
+			if (implementation) {
+				return implementation.call(*(args ?: []))
+			}
+			if (method.returnType == boolean) {
+				return false
+			}
+			if (method.returnType.primitive && method.returnType != void) {
+				return 0.asType(method.returnType)
+			}
+			null
+		} as InvocationHandler
+		(T)Proxy.newProxyInstance(RuntimeClasses.classLoader, [type] as Class[], handler)
+	}
+
+	@CompileStatic
+	private static class PluginFirstClassLoader extends URLClassLoader {
+
+		PluginFirstClassLoader(URL[] urls, ClassLoader parent) {
+			super(urls, parent)
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith('grails.plugin.standalone.')) {
+				return super.loadClass(name, resolve)
+			}
+			Class<?> loaded = findLoadedClass(name)
+			loaded ?: findClass(name)
+		}
+	}
+}
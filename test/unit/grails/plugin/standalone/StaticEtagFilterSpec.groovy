@@ -0,0 +1,121 @@
+/* Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package grails.plugin.standalone
+
+import javax.servlet.FilterChain
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for StaticEtagFilter.
+ *
+ * @author <a href='mailto:agent@local'>agent</a>
+ */
+class StaticEtagFilterSpec extends Specification {
+
+	private Class filterClass = RuntimeClasses.load('grails.plugin.standalone.StaticEtagFilter')
+	private Map<String, String> etags = ['/css/main.css': 'abc', '/css/main.css.gz': 'def', '/js/app.js': 'ghi', '/js/app.js.br': 'jkl']
+	private Map<String, String> headers = [:]
+	private int status = 200
+	private int chainCalls
+
+	private FilterChain chain = RuntimeClasses.stub(FilterChain, [doFilter: { request, HttpServletResponse response ->
+		chainCalls++
+		response.setHeader 'ETag', 'W/"123-456"'
+		response.setHeader 'Cache-Control', 'max-age=0'
+		response.setHeader 'Content-Type', 'text/css'
+	}])
+
+	void testAnswersMatchingIfNoneMatchWithNotModified() {
+		when:
+		request '/css/main.css', ['if-none-match': 'W/"xyz", "abc"']
+
+		then:
+		status == 304
+		chainCalls == 0
+		headers.ETag == '"abc"'
+		headers['Cache-Control'] == 'no-cache'
+	}
+
+	void testReplacesTheContainerHeaders() {
+		when:
+		request '/css/main.css', ['if-none-match': '"old"']
+
+		then:
+		status == 200
+		chainCalls == 1
+		headers.ETag == '"abc"'
+		headers['Cache-Control'] == 'no-cache'
+		headers['Content-Type'] == 'text/css'
+		!headers.Vary
+	}
+
+	void testUsesTheDigestOfThePrecompressedSibling() {
+		when:
+		request '/css/main.css', ['accept-encoding': 'gzip, deflate', 'if-none-match': '"def"'], true
+
+		then:
+		status == 304
+		headers.ETag == '"def"'
+		headers.Vary == 'Accept-Encoding'
+	}
+
+	@Unroll
+	void 'the ETag of #path for "#acceptEncoding" is #etag'() {
+		when:
+		request path, ['accept-encoding': acceptEncoding], true
+
+		then:
+		headers.ETag == etag
+		headers.Vary == 'Accept-Encoding'
+
+		where:
+		path            | acceptEncoding               | etag
+		'/js/app.js'    | 'gzip, deflate, br'          | '"jkl"'
+		'/js/app.js'    | 'gzip'                       | '"ghi"'
+		'/js/app.js'    | 'br;q=0'                     | '"ghi"'
+		'/js/app.js'    | '*'                          | '"jkl"'
+		'/css/main.css' | 'br;q=0.5, gzip;q=0.8'        | '"def"'
+		'/css/main.css' | 'gzip;q=0.5, identity'       | '"abc"'
+		'/css/main.css' | null                         | '"abc"'
+	}
+
+	void testIgnoresResourcesThatAreNotInTheManifest() {
+		when:
+		request '/img/logo.png', [:], true, 'public, max-age=31536000'
+
+		then:
+		chainCalls == 1
+		headers.ETag == 'W/"123-456"'
+		headers['Cache-Control'] == 'max-age=0'
+	}
+
+	private void request(String path, Map<String, String> requestHeaders, boolean precompressed = false,
+	                     String cacheControl = 'no-cache') {
+		HttpServletRequest request = RuntimeClasses.stub(HttpServletRequest, [
+			getMethod: { -> 'GET' },
+			getServletPath: { -> path },
+			getHeader: { String name -> requestHeaders[name.toLowerCase()] }])
+		HttpServletResponse response = RuntimeClasses.stub(HttpServletResponse, [
+			setHeader: { String name, String value -> headers[name] = value },
+			setStatus: { int sc -> status = sc }])
+
+		String[] encodings = precompressed ? ['br', 'gzip'] : null
+		filterClass.newInstance(etags, cacheControl, encodings).doFilter request, response, chain
+	}
+}